@@ -0,0 +1,26 @@
+package bench;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * run all benchmarks and write the results as json
+ */
+public class BenchmarkRunner {
+
+    /**
+     * @param args args[0]: json result file, default jmh-result.json
+     *             args[1]: regexp of benchmarks to run, default all
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+            .include(args.length > 1 ? args[1] : "bench\\..*")
+            .resultFormat(ResultFormatType.JSON)
+            .result(args.length > 0 ? args[0] : "jmh-result.json")
+            .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,152 @@
+package bench;
+
+import model.ModelFile;
+import model.ScoringModel;
+import model.TermVector;
+import model.WordCounts;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import wordcount.ByteTokenizer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * scoring of DOCS synthetic documents with varying class and vocabulary
+ * size, with the model on the heap or mapped from a model file. topK
+ * selects the K best classes with and without pruning.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClassifyBenchmark {
+    private static final int DOCS = 100;
+    private static final int K = 5;
+
+    @Param({"2", "20", "100"})
+    public int classNum;
+
+    @Param({"10000", "100000"})
+    public int vocabularySize;
+
+    @Param({"200", "5000"})
+    public int docWords;
+
+    @Param({"false", "true"})
+    public boolean offHeap;
+
+    private ScoringModel model;
+    private byte[][] docs;
+    private ByteTokenizer tokenizer = new ByteTokenizer();
+    private TermVector[] vectors;
+    private double[][] scores;
+    private File saved;
+
+    @Setup
+    public void setup() throws IOException {
+        Corpus corpus = new Corpus(this.vocabularySize, 42);
+        WordCounts counts = corpus.counts(this.classNum, this.vocabularySize * 5);
+        this.model = Corpus.model(counts);
+        if (this.offHeap) {
+            this.saved = File.createTempFile("model", ".bin");
+            ModelFile.write(new FileOutputStream(this.saved), new HashMap<>(),
+                new HashMap<>(), 0, 0, counts, this.model);
+            try (ModelFile.Reader reader = ModelFile.open(new Configuration(),
+                new Path(this.saved.toURI()))) {
+                this.model = reader.readScoringModel(true);
+            }
+        }
+        this.docs = new byte[DOCS][];
+        for (int i = 0; i < DOCS; i++) {
+            this.docs[i] = corpus.document(this.docWords);
+        }
+        this.vectors = new TermVector[DOCS];
+        this.scores = new double[DOCS][this.classNum];
+        for (int i = 0; i < DOCS; i++) {
+            this.vectors[i] = new TermVector();
+        }
+    }
+
+    /**
+     * parameters of topK only, so the other benchmarks do not run twice
+     */
+    @State(Scope.Thread)
+    public static class TopK {
+        @Param({"false", "true"})
+        public boolean prune;
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (this.saved != null) {
+            this.saved.delete();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DOCS)
+    public void classify(Blackhole blackhole) {
+        for (byte[] doc : this.docs) {
+            double[] scores = this.model.score(doc, 0, doc.length, this.tokenizer);
+            blackhole.consume(this.model.best(scores));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DOCS)
+    public void classifyVector(Blackhole blackhole) {
+        TermVector vector = this.vectors[0];
+        for (byte[] doc : this.docs) {
+            vector.clear();
+            this.model.vectorize(doc, 0, doc.length, this.tokenizer, vector);
+            double[] scores = this.model.newScores();
+            this.model.addVector(vector, scores);
+            blackhole.consume(this.model.best(scores));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DOCS)
+    public void classifyBatch(Blackhole blackhole) {
+        for (int i = 0; i < DOCS; i++) {
+            this.vectors[i].clear();
+            this.model.vectorize(this.docs[i], 0, this.docs[i].length,
+                this.tokenizer, this.vectors[i]);
+        }
+        this.model.scoreBatch(this.vectors, DOCS, this.scores);
+        for (double[] scores : this.scores) {
+            blackhole.consume(this.model.best(scores));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DOCS)
+    public void topK(TopK topK, Blackhole blackhole) {
+        TermVector vector = this.vectors[0];
+        for (byte[] doc : this.docs) {
+            vector.clear();
+            this.model.vectorize(doc, 0, doc.length, this.tokenizer, vector);
+            blackhole.consume(this.model.topK(vector, K, topK.prune));
+        }
+    }
+}
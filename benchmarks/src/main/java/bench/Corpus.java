@@ -0,0 +1,112 @@
+package bench;
+
+import model.ScoringModel;
+import model.WordCounts;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * synthetic corpus with zipf distributed words
+ */
+public class Corpus {
+    private final int vocabularySize;
+    // cumulative zipf probability of each word rank
+    private final double[] cumulative;
+    private final Random random;
+
+    /**
+     * @param vocabularySize the number of distinct words
+     * @param seed           random seed
+     */
+    public Corpus(int vocabularySize, long seed) {
+        this.vocabularySize = vocabularySize;
+        this.cumulative = new double[vocabularySize];
+        this.random = new Random(seed);
+        double sum = 0;
+        for (int i = 0; i < vocabularySize; i++) {
+            sum += 1.0 / (i + 1);
+            this.cumulative[i] = sum;
+        }
+        for (int i = 0; i < vocabularySize; i++) {
+            this.cumulative[i] /= sum;
+        }
+    }
+
+    public static String word(int rank) {
+        return "w" + rank;
+    }
+
+    /**
+     * @return rank of a random word
+     */
+    public int nextRank() {
+        double p = this.random.nextDouble();
+        int low = 0;
+        int high = this.vocabularySize - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (this.cumulative[mid] < p) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param tokens the number of words
+     * @return a line of random words
+     */
+    public String line(int tokens) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < tokens; i++) {
+            if (i > 0) {
+                line.append(' ');
+            }
+            line.append(word(nextRank()));
+        }
+        return line.toString();
+    }
+
+    /**
+     * @param tokens the number of words
+     * @return utf-8 bytes of a document of random words
+     */
+    public byte[] document(int tokens) {
+        return line(tokens).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param classNum       the number of classes
+     * @param tokensPerClass the number of words counted in each class
+     * @return word counts where each class prefers a different word range
+     */
+    public WordCounts counts(int classNum, int tokensPerClass) {
+        WordCounts counts = new WordCounts();
+        for (int c = 0; c < classNum; c++) {
+            int classIndex = counts.addClass("class" + c);
+            int shift = c * (this.vocabularySize / classNum);
+            for (int i = 0; i < tokensPerClass; i++) {
+                int rank = (nextRank() + shift) % this.vocabularySize;
+                counts.add(classIndex, word(rank), 1);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * @param counts word counts
+     * @return scoring model with a uniform prior
+     */
+    public static ScoringModel model(WordCounts counts) {
+        Map<String, Double> prior = new HashMap<>();
+        for (String className : counts.getClassNames()) {
+            prior.put(className, -Math.log(counts.classNum()));
+        }
+        return ScoringModel.build(prior, counts);
+    }
+}
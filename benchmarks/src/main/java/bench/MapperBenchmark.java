@@ -0,0 +1,149 @@
+package bench;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.MapContext;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.StatusReporter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.counters.GenericCounter;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.map.WrappedMapper;
+import org.apache.hadoop.mapreduce.task.MapContextImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import wordcount.ClassWordKey;
+import wordcount.WordCountMapper;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WordCountMapper.run over one synthetic document of LINES lines,
+ * which covers tokenization, key building and in-mapper combining.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MapperBenchmark {
+    private static final int LINES = 1000;
+
+    @Param({"true", "false"})
+    public boolean combine;
+
+    private Text[] lines;
+    private Configuration conf;
+
+    @Setup
+    public void setup() {
+        Corpus corpus = new Corpus(50000, 42);
+        this.lines = new Text[LINES];
+        for (int i = 0; i < LINES; i++) {
+            this.lines[i] = new Text(corpus.line(20));
+        }
+        this.conf = new Configuration(false);
+        this.conf.setBoolean(WordCountMapper.COMBINE, this.combine);
+        ClassWordKey.setClasses(this.conf, Collections.singletonList("class0"));
+    }
+
+    @Benchmark
+    public long map() throws Exception {
+        CountingWriter writer = new CountingWriter();
+        MapContext<Object, Text, ClassWordKey, IntWritable> mapContext = new MapContextImpl<>(
+            this.conf, new TaskAttemptID(), new LineReader(this.lines), writer, null,
+            new CounterReporter(),
+            new FileSplit(new Path("/data/class0/doc0"), 0, 0, new String[0]));
+        Mapper<Object, Text, ClassWordKey, IntWritable>.Context context =
+            new WrappedMapper<Object, Text, ClassWordKey, IntWritable>()
+                .getMapContext(mapContext);
+        new WordCountMapper().run(context);
+        return writer.records;
+    }
+
+    private static class LineReader extends RecordReader<Object, Text> {
+        private final Text[] lines;
+        private final LongWritable key = new LongWritable();
+        private int next;
+
+        LineReader(Text[] lines) {
+            this.lines = lines;
+        }
+
+        public void initialize(InputSplit split, TaskAttemptContext context) {
+        }
+
+        public boolean nextKeyValue() {
+            if (this.next == this.lines.length) {
+                return false;
+            }
+            this.key.set(this.next++);
+            return true;
+        }
+
+        public Object getCurrentKey() {
+            return this.key;
+        }
+
+        public Text getCurrentValue() {
+            return this.lines[this.next - 1];
+        }
+
+        public float getProgress() {
+            return this.next / (float) this.lines.length;
+        }
+
+        public void close() {
+        }
+    }
+
+    private static class CountingWriter extends RecordWriter<ClassWordKey, IntWritable> {
+        long records;
+
+        public void write(ClassWordKey key, IntWritable value) {
+            this.records += key.getLength() + value.get();
+        }
+
+        public void close(TaskAttemptContext context) {
+        }
+    }
+
+    private static class CounterReporter extends StatusReporter {
+        public Counter getCounter(Enum<?> name) {
+            return new GenericCounter();
+        }
+
+        public Counter getCounter(String group, String name) {
+            return new GenericCounter();
+        }
+
+        public void progress() {
+        }
+
+        public float getProgress() {
+            return 0;
+        }
+
+        public void setStatus(String status) {
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package bench;
+
+import model.ModelFile;
+import model.ScoringModel;
+import model.WordCounts;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * save and load of a model file on the local file system
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModelBenchmark {
+    private static final int CLASSES = 20;
+
+    @Param({"10000", "100000"})
+    public int vocabularySize;
+
+    private WordCounts counts;
+    private ScoringModel model;
+    private Map<String, ArrayList<String>> classes;
+    private File saved;
+    private File scratch;
+    private Configuration conf;
+
+    @Setup
+    public void setup() throws IOException {
+        Corpus corpus = new Corpus(this.vocabularySize, 42);
+        this.counts = corpus.counts(CLASSES, this.vocabularySize * 5);
+        this.model = Corpus.model(this.counts);
+        this.classes = new HashMap<>();
+        for (String className : this.counts.getClassNames()) {
+            this.classes.put(className, new ArrayList<>());
+        }
+        this.saved = File.createTempFile("model", ".bin");
+        this.scratch = File.createTempFile("model", ".bin");
+        save(this.saved);
+        this.conf = new Configuration();
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.saved.delete();
+        this.scratch.delete();
+    }
+
+    @Benchmark
+    public void save() throws IOException {
+        save(this.scratch);
+    }
+
+    @Benchmark
+    public ScoringModel load() throws IOException {
+        try (ModelFile.Reader reader = ModelFile.open(this.conf,
+            new Path(this.saved.toURI()))) {
+            return reader.readScoringModel(false);
+        }
+    }
+
+    @Benchmark
+    public ScoringModel loadOffHeap() throws IOException {
+        try (ModelFile.Reader reader = ModelFile.open(this.conf,
+            new Path(this.saved.toURI()))) {
+            return reader.readScoringModel();
+        }
+    }
+
+    private void save(File file) throws IOException {
+        ModelFile.write(new FileOutputStream(file), this.classes, this.classes,
+            0, 0, this.counts, this.model);
+    }
+}
@@ -0,0 +1,93 @@
+package bench;
+
+import model.JobOutput;
+import model.WordCounts;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import wordcount.ClassWordKey;
+import wordcount.CountOutputFormat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * parse of a word count job part file into WordCounts, as done by train,
+ * from text and from the binary CountOutputFormat
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrainParseBenchmark {
+    private static final int CLASSES = 20;
+
+    @Param({"10000", "100000"})
+    public int wordsPerClass;
+
+    private String[] classes;
+    private byte[] partFile;
+    private byte[] countFile;
+
+    @Setup
+    public void setup() throws IOException {
+        this.classes = new String[CLASSES];
+        for (int c = 0; c < CLASSES; c++) {
+            this.classes[c] = "class" + c;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int c = 0; c < CLASSES; c++) {
+            String prefix = c + "\t";
+            for (int w = 0; w < this.wordsPerClass; w++) {
+                out.write((prefix + Corpus.word(w) + "\t" + (w % 97 + 1) + "\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        this.partFile = out.toByteArray();
+        out.reset();
+        CountOutputFormat.writeHeader(out, this.classes);
+        ClassWordKey key = new ClassWordKey();
+        for (int c = 0; c < CLASSES; c++) {
+            byte[] prefix = ClassWordKey.prefix(c);
+            for (int w = 0; w < this.wordsPerClass; w++) {
+                byte[] word = Corpus.word(w).getBytes(StandardCharsets.UTF_8);
+                key.set(prefix, word, 0, word.length);
+                writeRecord(out, key, w % 97 + 1);
+            }
+        }
+        this.countFile = out.toByteArray();
+    }
+
+    private static void writeRecord(ByteArrayOutputStream out, ClassWordKey key, int count)
+        throws IOException {
+        out.write(key.getBytes(), 0, key.getLength());
+        CountOutputFormat.writeVarint(out, count);
+    }
+
+    @Benchmark
+    public WordCounts parse() throws IOException {
+        WordCounts counts = new WordCounts();
+        JobOutput.read(new ByteArrayInputStream(this.partFile), this.classes, counts);
+        return counts;
+    }
+
+    @Benchmark
+    public WordCounts parseCountFile() throws IOException {
+        WordCounts counts = new WordCounts();
+        JobOutput.readCountFile(new ByteArrayInputStream(this.countFile), counts);
+        return counts;
+    }
+}
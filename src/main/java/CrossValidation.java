@@ -0,0 +1,261 @@
+import filecount.MyCombineFileInputFormat;
+import metrics.PipelineMetrics;
+import model.ScoringModel;
+import model.WordCounts;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import wordcount.CombinedTextInputFormat;
+import wordcount.FoldSplit;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * stratified k-fold cross validation with a single word count job.
+ * the documents of each class are shuffled with a seeded random and dealt
+ * to the folds in turn, the job counts every document under the class key
+ * "class/fold". the model of a fold is built from the totals of all folds
+ * minus the counts of the held out fold, so the dataset is counted once
+ * instead of k times. the folds are evaluated in parallel.
+ */
+public class CrossValidation {
+    // the number of threads which evaluate folds
+    static final String CV_THREADS = "naivebayes.cv.threads";
+    private final NaiveBayes nb;
+    private final int k;
+    // map<class, List<document>> of each fold
+    private final List<Map<String, List<String>>> folds;
+    // word counts of the class keys of all folds
+    private final WordCounts foldCounts;
+    private WordCounts totals;
+
+    /**
+     * @param conf config of the job
+     * @param k    the number of folds
+     */
+    public CrossValidation(Configuration conf, int k) {
+        this.nb = new NaiveBayes(conf);
+        this.nb.metrics = new PipelineMetrics("cv");
+        this.k = k;
+        this.folds = new ArrayList<>();
+        for (int f = 0; f < k; f++) {
+            this.folds.add(new HashMap<>());
+        }
+        this.foldCounts = new WordCounts(this.nb.counts.getVocabulary());
+    }
+
+    /**
+     * @param args args[0]: the number of folds
+     *             args[1]: dataset directory
+     *             args[2]: output directory for job result
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 3) {
+            System.out.println("Usage: CrossValidation k \"data dir\" \"output dir\"");
+            return;
+        }
+        Configuration conf = new Configuration();
+        if (System.getProperty("user.name").equals("peng")) {
+            conf.set("fs.defaultFS", "hdfs://localhost:8020");
+        }
+        CrossValidation cv = new CrossValidation(conf, Integer.parseInt(args[0]));
+        cv.nb.metrics.register();
+        cv.nb.metrics.time("split", () -> {
+            cv.assignFolds(new Path(args[1]), new Path(args[2]));
+        });
+        cv.count(new Path(args[1]), new Path(args[2]));
+        double[][] results = cv.nb.metrics.time("cv-eval", () -> cv.evaluate(args[1]));
+        // accuracy and macro f1 of each fold, then mean and std
+        double[] sum = new double[2];
+        double[] squareSum = new double[2];
+        for (int f = 0; f < results.length; f++) {
+            System.out.println("fold " + f + ": accuracy " + results[f][0]
+                + ", macro f1 " + results[f][1]);
+            for (int i = 0; i < 2; i++) {
+                sum[i] += results[f][i];
+                squareSum[i] += results[f][i] * results[f][i];
+            }
+        }
+        String[] names = {"accuracy", "macro f1"};
+        for (int i = 0; i < 2; i++) {
+            double mean = sum[i] / results.length;
+            double std = Math.sqrt(Math.max(0, squareSum[i] / results.length - mean * mean));
+            System.out.println(names[i] + ": " + mean + " +- " + std);
+        }
+        cv.nb.writeMetrics(args[2], "metrics-cv.json");
+    }
+
+    /**
+     * deal the shuffled documents of each class to the folds in turn and
+     * write the "class\tdocument\tfold" lines read by CombinedTextInputFormat
+     *
+     * @param dataset dataset directory
+     * @param output  output directory
+     * @throws Exception
+     */
+    private void assignFolds(Path dataset, Path output) throws Exception {
+        FileSystem fs = FileSystem.get(this.nb.conf);
+        fs.delete(output, true);
+        Path foldFile = new Path(output, "folds");
+        try (FSDataOutputStream out = fs.create(foldFile);
+             BufferedWriter writer = new BufferedWriter(
+                 new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            for (Map.Entry<String, List<FileStatus>> entry :
+                this.nb.listDataset(dataset).entrySet()) {
+                String className = entry.getKey();
+                List<String> names = NaiveBayes.names(entry.getValue());
+                Collections.shuffle(names, this.nb.random);
+                for (int i = 0; i < names.size(); i++) {
+                    int f = i % this.k;
+                    this.folds.get(f).computeIfAbsent(className,
+                        key -> new ArrayList<>()).add(names.get(i));
+                    writer.write(className + '\t' + names.get(i) + '\t' + f + '\n');
+                }
+                this.nb.classes.put(className, new ArrayList<>(names));
+            }
+        }
+        this.nb.conf.set(CombinedTextInputFormat.FOLDS,
+            fs.makeQualified(foldFile).toString());
+        // the folds are carried by the combined splits
+        this.nb.conf.setBoolean(MyCombineFileInputFormat.COMBINE_INPUT, true);
+    }
+
+    /**
+     * count all documents once and add the counts of the folds of each
+     * class into the totals
+     *
+     * @param dataset dataset directory
+     * @param output  output directory
+     * @throws Exception
+     */
+    private void count(Path dataset, Path output) throws Exception {
+        List<Path> inputs = new ArrayList<>();
+        List<String> classKeys = new ArrayList<>();
+        for (String className : this.nb.classes.keySet()) {
+            inputs.add(new Path(dataset, className));
+            for (int f = 0; f < this.k; f++) {
+                classKeys.add(FoldSplit.foldClass(className, f));
+            }
+        }
+        Path jobOutput = new Path(output, NaiveBayes.JOB_OUTPUT + "-cv");
+        this.nb.runWordCountJob(inputs, classKeys, jobOutput);
+        this.nb.metrics.time("train", () -> {
+            this.nb.readJobOutput(jobOutput, this.foldCounts);
+            this.totals = new WordCounts(this.foldCounts.getVocabulary());
+            for (String key : this.foldCounts.getClassNames()) {
+                String className =
+                    key.substring(0, key.lastIndexOf(FoldSplit.SEPARATOR));
+                this.totals.addCounts(this.totals.addClass(className),
+                    this.foldCounts, this.foldCounts.classIndex(key), 1);
+            }
+        });
+    }
+
+    /**
+     * evaluate the folds by CV_THREADS threads
+     *
+     * @param dataset dataset directory
+     * @return [accuracy, macro f1] of each fold
+     * @throws Exception
+     */
+    private double[][] evaluate(String dataset) throws Exception {
+        FileSystem fs = FileSystem.get(this.nb.conf);
+        int threads = Math.min(this.k, this.nb.conf.getInt(CV_THREADS,
+            Runtime.getRuntime().availableProcessors()));
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        List<Future<double[]>> results = new ArrayList<>();
+        try {
+            for (int f = 0; f < this.k; f++) {
+                int fold = f;
+                results.add(pool.submit(() -> evaluate(fold, dataset, fs)));
+            }
+            double[][] evaluation = new double[this.k][];
+            for (int f = 0; f < this.k; f++) {
+                evaluation[f] = results.get(f).get();
+            }
+            return evaluation;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * build the model of a fold from the totals minus the held out fold and
+     * classify the held out documents
+     *
+     * @param fold    the held out fold
+     * @param dataset dataset directory
+     * @param fs      file system of the dataset
+     * @return [accuracy, macro f1] of the fold, the f1 of the macro averaged
+     * precision and recall like NaiveBayesTest
+     * @throws Exception
+     */
+    private double[] evaluate(int fold, String dataset, FileSystem fs) throws Exception {
+        WordCounts counts = this.totals.copy();
+        Map<String, Integer> docNum = new HashMap<>();
+        for (String className : this.totals.getClassNames()) {
+            int c = counts.classIndex(className);
+            String key = FoldSplit.foldClass(className, fold);
+            int heldOut = this.foldCounts.classIndex(key);
+            if (heldOut >= 0) {
+                counts.addCounts(c, this.foldCounts, heldOut, -1);
+            }
+            // the documents of the other folds, known from the listing
+            int trainNum = 0;
+            for (int g = 0; g < this.k; g++) {
+                List<String> docs = this.folds.get(g).get(className);
+                if (g != fold && docs != null) {
+                    trainNum += docs.size();
+                }
+            }
+            docNum.put(className, trainNum);
+        }
+        ScoringModel model = ScoringModel.build(NaiveBayes.logPrior(docNum), counts);
+        String[] classNames = model.getClassNames();
+        Map<String, Integer> classIndex = new HashMap<>();
+        for (int i = 0; i < classNames.length; i++) {
+            classIndex.put(classNames[i], i);
+        }
+        // confusion[true class][predicted class]
+        int[][] confusion = new int[classNames.length][classNames.length];
+        int total = 0;
+        for (Map.Entry<String, List<String>> entry : this.folds.get(fold).entrySet()) {
+            int trueClass = classIndex.get(entry.getKey());
+            for (String doc : entry.getValue()) {
+                String result = NaiveBayes.classify(model,
+                    new Path(dataset + "/" + entry.getKey() + "/" + doc), fs);
+                confusion[trueClass][classIndex.get(result)]++;
+                total++;
+            }
+        }
+        int correct = 0;
+        // {{tp, fp}, {fn, tn}} of each class, like the matrices of NaiveBayesTest
+        List<int[][]> matrices = new ArrayList<>();
+        for (int c = 0; c < classNames.length; c++) {
+            int predicted = 0, actual = 0;
+            for (int i = 0; i < classNames.length; i++) {
+                predicted += confusion[i][c];
+                actual += confusion[c][i];
+            }
+            int tp = confusion[c][c];
+            correct += tp;
+            matrices.add(new int[][]{{tp, predicted - tp},
+                {actual - tp, total - predicted - actual + tp}});
+        }
+        return new double[]{total == 0 ? 0 : correct / (double) total,
+            NaiveBayesTest.macroAverage(matrices)[2]};
+    }
+}
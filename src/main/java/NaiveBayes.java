@@ -1,24 +1,70 @@
-import filecount.MyFileInputFormat;
+import corpus.CorpusCache;
+import corpus.CorpusReader;
+import filecount.MyCombineFileInputFormat;
+import metrics.PipelineMetrics;
+import model.JobOutput;
+import model.ModelFile;
+import model.ScoringModel;
+import model.TermVector;
+import model.Vocabulary;
+import model.WordCounts;
+import model.WordIndex;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.*;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.io.IntWritable;
-import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.log4j.Logger;
-import wordcount.WordCount;
+import wordcount.ByteTokenizer;
+import wordcount.ClassWordKey;
+import wordcount.ClassWordPartitioner;
+import wordcount.CombinedTextInputFormat;
+import wordcount.CountOutputFormat;
+import wordcount.LocalWordCount;
 import wordcount.WordCountMapper;
 import wordcount.WordCountReducer;
 
 import java.io.*;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class NaiveBayes {
     private static final Logger logger = Logger.getLogger(NaiveBayes.class);
+    // the number of reducers of the word count job, default is class number
+    static final String REDUCE_TASKS = "naivebayes.reduce.tasks";
+    // output directory of the word count job under the output dir
+    static final String JOB_OUTPUT = "wordcount";
+    // write the word count job output with CountOutputFormat, otherwise as text
+    static final String JOB_OUTPUT_BINARY = "naivebayes.job.output.binary";
+    // the number of threads which read the part files of the job output
+    static final String TRAIN_THREADS = "naivebayes.train.threads";
+    // the number of threads which list the class directories
+    static final String LIST_THREADS = "naivebayes.list.threads";
+    // seed of the train and test split, the same seed gives the same split
+    static final String SEED = "naivebayes.seed";
+    // file name of the current classifier under the output dir
+    static final String CLASSIFIER = "Classifier";
+    // read buffer size of a document to classify
+    static final int READ_BUFFER = 8192;
     Configuration conf;
     // map<class, List<document>>: document for train
     Map<String, ArrayList<String>> classes;
@@ -28,10 +74,18 @@ public class NaiveBayes {
     Map<String, Double> prior;
     // total document number for train
     int docsTotalNum;
-    // the number of all words in a class
-    Map<String, Integer> totalWordsNumByClass;
-    // Map<class, Map<word, number>>: the number of a word in a specific class
-    Map<String, Map<String, Integer>> wordsNumByClass;
+    // the number of words in each class over the global vocabulary
+    WordCounts counts;
+    // frozen log probability table used by classify
+    ScoringModel model;
+    // the file of a loaded classifier
+    Path resultFile;
+    // version of the classifier, increased by each incremental training
+    int version;
+    // phase timings, job counters and latencies of this run
+    PipelineMetrics metrics;
+    // random source of the train and test split
+    Random random;
 
     /**
      * default constructor
@@ -43,18 +97,21 @@ public class NaiveBayes {
          *  constructor for a new classifier.
          */
         this.conf = conf;
+        this.metrics = new PipelineMetrics("train");
+        this.random = new Random(conf.getLong(SEED, 0));
         this.classes = new HashMap<>();
         this.testFile = new HashMap<>();
         this.prior = new HashMap<>();
         this.docsTotalNum = 0;
-        this.totalWordsNumByClass = new HashMap<>();
-        this.wordsNumByClass = new HashMap<>();
+        int buckets = conf.getInt(WordCountMapper.HASH_BUCKETS, 0);
+        this.counts = buckets > 0 ? new WordCounts(Vocabulary.hashed(buckets))
+            : new WordCounts();
     }
 
     /**
      * @param conf       config for a file system.
      * @param resultFile the file which store the classifier
-     * @throws Exception exception from ObjectInputStream.readObject
+     * @throws Exception exception from ModelFile.Reader
      */
     public NaiveBayes(Configuration conf, String resultFile) throws Exception {
         /*
@@ -63,266 +120,605 @@ public class NaiveBayes {
          *  was serialized to a file before.
          *  conf: config for a file system.
          *  resultDir: path of the classifier.
+         *  the word counts are not needed to classify, so they are
+         *  only read by loadCounts.
          */
-        FileSystem fs = FileSystem.get(conf);
-        FSDataInputStream in = fs.open(new Path(resultFile));
-        ObjectInputStream is = new ObjectInputStream(in);
-        // read classifier form trainResult in resultDir.
         this.conf = conf;
-        this.classes = (Map<String, ArrayList<String>>) is.readObject();
-        this.testFile = (Map<String, ArrayList<String>>) is.readObject();
-        this.prior = (Map<String, Double>) is.readObject();
-        this.docsTotalNum = (int) is.readObject();
-        this.totalWordsNumByClass = (Map<String, Integer>) is.readObject();
-        this.wordsNumByClass = (Map<String, Map<String, Integer>>) is.readObject();
-        is.close();
+        this.metrics = new PipelineMetrics("classifier");
+        this.random = new Random(conf.getLong(SEED, 0));
+        this.resultFile = new Path(resultFile);
+        this.classes = new HashMap<>();
+        this.testFile = new HashMap<>();
+        this.metrics.time("load", () -> {
+            try (ModelFile.Reader reader = ModelFile.open(conf, this.resultFile)) {
+                reader.readSplit(this.classes, this.testFile);
+                this.prior = reader.readPrior();
+                this.docsTotalNum = reader.getDocsTotalNum();
+                this.version = reader.getModelVersion();
+                this.model = reader.readScoringModel();
+            }
+        });
+    }
+
+    /**
+     * read the word counts of a loaded classifier
+     *
+     * @return word counts of all classes
+     * @throws IOException exception from ModelFile.Reader
+     */
+    WordCounts loadCounts() throws IOException {
+        if (this.counts == null) {
+            try (ModelFile.Reader reader = ModelFile.open(this.conf, this.resultFile)) {
+                this.counts = reader.readCounts(reader.readVocabulary());
+            }
+        }
+        return this.counts;
     }
 
     /**
      * @param args args[0]: dataset directory
      *             args[1]: output directory for job result
+     *             or -incremental, dataset directory, output directory
+     *             to add new documents of the dataset to the classifier
      * @throws Exception
      */
     public static void main(String[] args) throws Exception {
-        if (args.length != 2) {
-            System.out.println("Usage: NaiveBayes \"data dir\" \"output dir\"");
+        boolean incremental = args.length == 3 && args[0].equals("-incremental");
+        if (args.length != 2 && !incremental) {
+            System.out.println("Usage: NaiveBayes [-incremental] \"data dir\" \"output dir\"");
             return;
         }
         Configuration conf = new Configuration();
         if (System.getProperty("user.name").equals("peng")) {
             conf.set("fs.defaultFS", "hdfs://localhost:8020");
         }
+        if (incremental) {
+            String[] dirs = {args[1], args[2]};
+            NaiveBayes nb = new NaiveBayes(conf, dirs[1] + "/" + CLASSIFIER);
+            nb.metrics.register();
+            if (nb.trainIncremental(dirs)) {
+                nb.save(dirs);
+            }
+            nb.writeMetrics(dirs[1], "metrics-incremental.json");
+            return;
+        }
         NaiveBayes nb = new NaiveBayes(conf);
+        nb.metrics.register();
         // auto split data to train data and test data
-        nb.splitDataSet(new Path(args[0]));
-        // submit document count job and calculate prior probability
-        nb.calcPrior(args);
-        // start word count job for each class
-        nb.startMRJob(args);
-        // train classifier
-        nb.trainAllClasses(new Path(args[1]));
+        TreeMap<String, List<FileStatus>> listing =
+            nb.metrics.time("split", () -> nb.splitDataSet(new Path(args[0])));
+        // count the words of all classes by a single job or in process
+        nb.countAllClasses(args, listing);
+        // calculate prior probability and train classifier
+        nb.trainAllClasses();
         // serialize the classifier to hdfs
         nb.save(args);
+        nb.writeMetrics(args[1], "metrics-train.json");
+    }
+
+    /**
+     * write the json report of the metrics to PipelineMetrics.REPORT or
+     * a file under the output directory
+     *
+     * @param output output directory
+     * @param name   default file name of the report
+     * @throws IOException exception from the file system
+     */
+    void writeMetrics(String output, String name) throws IOException {
+        this.metrics.writeJson(FileSystem.get(this.conf), new Path(
+            this.conf.get(PipelineMetrics.REPORT, new Path(output, name).toString())));
     }
 
     /**
      * @param path dataset path
-     * @throws IOException exception from FileSystem.listStatus
+     * @return documents of each class of the dataset
+     * @throws Exception exception from listDataset
      */
-    private void splitDataSet(Path path) throws IOException {
+    private TreeMap<String, List<FileStatus>> splitDataSet(Path path) throws Exception {
         /*
          *  split data set into train data and test data.
-         *  randomly choose for 1/10 test and 9/10 train data.
+         *  1/10 of the documents of each class are chosen for test and
+         *  9/10 for train. the documents are shuffled with a seeded random
+         *  in name order, so the split is stratified and reproducible.
          */
-        FileSystem fs = FileSystem.get(this.conf);
-        FileStatus[] dirs = fs.listStatus(path);
-        for (FileStatus dir : dirs) {
-            FileStatus[] docs = fs.listStatus(dir.getPath());
+        TreeMap<String, List<FileStatus>> listing = listDataset(path);
+        for (Map.Entry<String, List<FileStatus>> entry : listing.entrySet()) {
             ArrayList<String> trainPath = new ArrayList<>();
             ArrayList<String> testPath = new ArrayList<>();
-            for (FileStatus doc : docs) {
-                if (Math.random() > 0.1) {
-                    trainPath.add(doc.getPath().getName());
-                } else {
-                    testPath.add(doc.getPath().getName());
+            split(names(entry.getValue()), trainPath, testPath);
+            this.docsTotalNum += trainPath.size();
+            this.classes.put(entry.getKey(), trainPath);
+            this.testFile.put(entry.getKey(), testPath);
+        }
+        return listing;
+    }
+
+    /**
+     * shuffle documents of a class with this.random and choose 1/10 of
+     * them for test and the rest for train
+     *
+     * @param names     names of the documents, shuffled by this method
+     * @param trainPath train documents, added to
+     * @param testPath  test documents, added to
+     */
+    private void split(List<String> names, List<String> trainPath, List<String> testPath) {
+        Collections.shuffle(names, this.random);
+        int testNum = (int) Math.round(names.size() / 10.0);
+        testPath.addAll(names.subList(0, testNum));
+        trainPath.addAll(names.subList(testNum, names.size()));
+    }
+
+    /**
+     * @param docs status of documents
+     * @return names of the documents
+     */
+    static List<String> names(List<FileStatus> docs) {
+        List<String> names = new ArrayList<>(docs.size());
+        for (FileStatus doc : docs) {
+            names.add(doc.getPath().getName());
+        }
+        return names;
+    }
+
+    /**
+     * @param listing documents of each class of the dataset
+     * @param names   names of the chosen documents of each class
+     * @return status of the chosen documents, taken from the listing
+     */
+    private static List<FileStatus> documents(Map<String, List<FileStatus>> listing,
+                                              Map<String, ? extends List<String>> names) {
+        List<FileStatus> docs = new ArrayList<>();
+        for (Map.Entry<String, ? extends List<String>> entry : names.entrySet()) {
+            Set<String> chosen = new HashSet<>(entry.getValue());
+            for (FileStatus doc : listing.getOrDefault(entry.getKey(),
+                Collections.emptyList())) {
+                if (chosen.contains(doc.getPath().getName())) {
+                    docs.add(doc);
                 }
             }
-            this.docsTotalNum += trainPath.size();
-            this.classes.put(dir.getPath().getName(), trainPath);
-            this.testFile.put(dir.getPath().getName(), testPath);
         }
+        return docs;
     }
 
     /**
-     * @param args args in main function
-     * @throws IOException            just throw
-     * @throws InterruptedException   just throw
-     * @throws ClassNotFoundException just throw
+     * list the documents of all class directories of a dataset.
+     * the class directories are listed by LIST_THREADS threads, each
+     * directory is read with listStatusIterator, which pages through a big
+     * directory instead of returning it as one array and does not look up
+     * block locations. hidden files and sub directories are skipped like
+     * FileInputFormat does.
+     *
+     * @param path dataset path
+     * @return status of the documents of each class, both in name order
+     * @throws Exception exception from the file system
      */
-    private void calcPrior(String[] args) throws IOException,
-        InterruptedException, ClassNotFoundException {
-        /*
-         *  calculate prior of classes.
-         *  I use laplace smoothing to deal with zero probability.
-         */
-        Configuration conf = this.conf;
-        /*
-         *  this argument is set to let fileinputformat to iterate recursively
-         *  to each document.
-         */
-        conf.set("mapreduce.input.fileinputformat.input.dir.recursive", "true");
-        Path output = new Path("filecount");
-        FileSystem fs = FileSystem.get(conf);
-        fs.delete(output, true);
-        // document count job
-        Job job = Job.getInstance(this.conf, "filecount");
-        job.setJarByClass(NaiveBayes.class);
-        job.setMapperClass(WordCount.TokenizerMapper.class);
-        job.setCombinerClass(WordCount.IntSumReducer.class);
-        job.setReducerClass(WordCount.IntSumReducer.class);
-        job.setOutputKeyClass(Text.class);
-        job.setOutputValueClass(IntWritable.class);
-        job.setInputFormatClass(MyFileInputFormat.class);
-        FileInputFormat.setInputPaths(job, new Path(args[0]));
-        FileOutputFormat.setOutputPath(job, output);
-        /*
-         *******************************************************
-         *  how to distinguish test file from train file?
-         *  As we know, the above job count every file in class directory,
-         *  but I do not divide test file from train file, so the return
-         *  value will be total number of documents of class. But what we
-         *  need is just the number of train files of each class.
-         *  I use a trick here to get the actual number of train files.
-         *  That is using total number to minus the number of test files
-         *  in this.testFile(NaiveBayes.testFile).
-         *  (Ps: using map reduce job will not always speed up our program!)
-         *******************************************************
-         */
-        Map<String, Integer> docNum = new HashMap<>();
-        int docTotalNum = 0;
-        if (job.waitForCompletion(true)) {
-            FSDataInputStream in = fs.open(new Path("filecount/part-r-00000"));
-            BufferedReader reader = new BufferedReader(new InputStreamReader(in));
-            String s = reader.readLine();
-            while (s != null) {
-                String[] line = s.split("\\s");
-                Integer num = Integer.valueOf(line[1]);
-                // trick below
-                num -= this.testFile.get(line[0]).size();
-                docNum.put(line[0], num);
-                docTotalNum += num;
-                s = reader.readLine();
+    TreeMap<String, List<FileStatus>> listDataset(Path path) throws Exception {
+        FileSystem fs = path.getFileSystem(this.conf);
+        List<Path> dirs = new ArrayList<>();
+        for (FileStatus status : fs.listStatus(path, NaiveBayes::isVisible)) {
+            if (status.isDirectory()) {
+                dirs.add(status.getPath());
             }
-        } else {
-            logger.info("waitForCompletion false!!!");
-            return;
+        }
+        int threads = Math.max(1, Math.min(dirs.size(), this.conf.getInt(LIST_THREADS, 16)));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<List<FileStatus>>> listed = new ArrayList<>();
+            for (Path dir : dirs) {
+                listed.add(pool.submit(() -> {
+                    List<FileStatus> docs = new ArrayList<>();
+                    RemoteIterator<FileStatus> statuses = fs.listStatusIterator(dir);
+                    while (statuses.hasNext()) {
+                        FileStatus doc = statuses.next();
+                        if (doc.isFile() && isVisible(doc.getPath())) {
+                            docs.add(doc);
+                        }
+                    }
+                    docs.sort(Comparator.comparing(doc -> doc.getPath().getName()));
+                    return docs;
+                }));
+            }
+            TreeMap<String, List<FileStatus>> dataset = new TreeMap<>();
+            for (int i = 0; i < dirs.size(); i++) {
+                dataset.put(dirs.get(i).getName(), listed.get(i).get());
+            }
+            return dataset;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static boolean isVisible(Path path) {
+        return !path.getName().startsWith("_") && !path.getName().startsWith(".");
+    }
+
+    /**
+     * calculate prior of classes from the number of train documents.
+     * I use laplace smoothing to deal with zero probability.
+     *
+     * @param docNum the number of train documents of each class
+     */
+    private void calcPrior(Map<String, Integer> docNum) {
+        this.prior.putAll(logPrior(docNum));
+    }
+
+    /**
+     * @param docNum the number of train documents of each class
+     * @return log prior probability of each class with laplace smoothing
+     */
+    static Map<String, Double> logPrior(Map<String, Integer> docNum) {
+        int docTotalNum = 0;
+        for (Integer num : docNum.values()) {
+            docTotalNum += num;
         }
         // calculate prior probability for each class
+        Map<String, Double> prior = new HashMap<>();
         for (Map.Entry<String, Integer> entry : docNum.entrySet()) {
-            double prior = (entry.getValue() + 1) /
+            double p = (entry.getValue() + 1) /
                 (double) (docTotalNum + docNum.size());
-            this.prior.put(entry.getKey(), Math.log(prior));
+            prior.put(entry.getKey(), Math.log(p));
         }
+        return prior;
     }
 
     /**
-     * start word count for each class
+     * count the words of all classes.
+     * a single job counts (class, word) pairs of all classes, only the
+     * train documents of the split are counted, like by trainIncremental.
      *
-     * @param args args in main fucntion
+     * @param args    args in main fucntion
+     * @param listing documents of each class of the dataset
      * @throws Exception just throw
      */
-    private void startMRJob(String[] args) throws Exception {
+    private void countAllClasses(String[] args, TreeMap<String, List<FileStatus>> listing)
+        throws Exception {
         FileSystem fs = FileSystem.get(this.conf);
         fs.delete(new Path(args[1]), true);
-        // one class, one word count job
-        for (String className : this.classes.keySet()) {
-            Job job = Job.getInstance(this.conf, className);
-            job.setJarByClass(NaiveBayes.class);
-            job.setMapperClass(WordCountMapper.class);
-            job.setCombinerClass(WordCountReducer.class);
-            job.setReducerClass(WordCountReducer.class);
-            job.setOutputKeyClass(Text.class);
-            job.setOutputValueClass(IntWritable.class);
-            FileInputFormat.setInputPaths(job,
-                new Path(args[0] + "/" + className));
-            FileOutputFormat.setOutputPath(job,
-                new Path(args[1] + "/" + className));
-            logger.info(job.waitForCompletion(true));
+        if (this.conf.get(CorpusCache.CACHE) != null) {
+            CorpusCache cache = corpusCache(new Path(args[0]), listing);
+            this.metrics.time("word-count", () -> {
+                countCache(cache, this.counts);
+            });
+            return;
         }
+        countWords(documents(listing, this.classes), new Path(args[1], JOB_OUTPUT));
     }
 
     /**
-     * train class according to word count job result
+     * count the inputs into this.counts.
+     * using map reduce job will not always speed up our program, a dataset
+     * below LocalWordCount.THRESHOLD bytes is counted in process by
+     * LocalWordCount, a bigger one by the word count job. the documents
+     * come from the listing of the dataset, so their sizes are known
+     * without listing the class directories again.
      *
-     * @param output word count output path
-     * @throws Exception
+     * @param docs   status of the documents to count
+     * @param output output directory of the job
+     * @throws Exception just throw
      */
-    private void trainAllClasses(Path output) throws Exception {
-        FileSystem fs = FileSystem.get(this.conf);
-        FileStatus[] fileStatuses = fs.listStatus(output);
-        for (FileStatus status : fileStatuses) {
-            if (status.isDirectory()) {
-                train(status.getPath());
+    void countWords(List<FileStatus> docs, Path output) throws Exception {
+        long threshold = this.conf.getLong(LocalWordCount.THRESHOLD,
+            LocalWordCount.DEFAULT_THRESHOLD);
+        if (threshold > 0) {
+            long length = LocalWordCount.length(docs);
+            if (length < threshold) {
+                logger.info("count " + docs.size() + " documents of " + length
+                    + " bytes in process");
+                this.metrics.time("word-count", () -> {
+                    long[] read = new LocalWordCount(this.conf, this.conf.getInt(
+                        TRAIN_THREADS, Runtime.getRuntime().availableProcessors()),
+                        this.counts.getVocabulary()).count(docs, this.counts);
+                    String group = WordCountMapper.WordCountCounter.class.getName() + ".";
+                    this.metrics.count(group + WordCountMapper.WordCountCounter.TOKENS, read[0]);
+                    this.metrics.count(group + WordCountMapper.WordCountCounter.BYTES, read[1]);
+                });
+                return;
             }
         }
+        List<Path> inputs = new ArrayList<>(docs.size());
+        for (FileStatus doc : docs) {
+            inputs.add(doc.getPath());
+        }
+        runWordCountJob(inputs, new TreeSet<>(this.classes.keySet()), output);
+        this.metrics.time("train", () -> {
+            readJobOutput(output, this.counts);
+        });
+    }
+
+    /**
+     * open the corpus cache of a dataset under CorpusCache.CACHE, the cache
+     * is built first if it does not exist yet
+     *
+     * @param dataset dataset directory
+     * @param listing documents of each class of the dataset
+     * @return the cache
+     * @throws Exception exception from the file system, or if the cache
+     *                   belongs to another dataset or is out of date
+     */
+    CorpusCache corpusCache(Path dataset, SortedMap<String, List<FileStatus>> listing)
+        throws Exception {
+        Path dir = new Path(this.conf.get(CorpusCache.CACHE));
+        if (!CorpusCache.exists(this.conf, dir)) {
+            return this.metrics.time("cache", () -> CorpusCache.build(this.conf, dataset,
+                listing, dir,
+                this.conf.getInt(TRAIN_THREADS, Runtime.getRuntime().availableProcessors())));
+        }
+        CorpusCache cache = CorpusCache.open(this.conf, dir);
+        if (!cache.isCacheOf(dataset)) {
+            throw new IOException(dir + " is not a corpus cache of " + dataset);
+        }
+        if (!cache.isCurrent(listing)) {
+            throw new IOException("corpus cache " + dir
+                + " is out of date, delete it to build it again");
+        }
+        return cache;
     }
 
     /**
-     * train the specific class
+     * count the words of the cached train documents into counts.
+     * the part files are read by TRAIN_THREADS threads, each into
+     * its own word counts which are merged into counts as they finish.
+     *
+     * @param cache  the corpus cache of the dataset
+     * @param counts word counts to add to
+     * @throws Exception exception from the file system, or if a train
+     *                   document is not in the cache
+     */
+    private void countCache(CorpusCache cache, WordCounts counts) throws Exception {
+        boolean[] train = cache.select(this.classes);
+        int trainNum = 0;
+        for (boolean doc : train) {
+            trainNum += doc ? 1 : 0;
+        }
+        if (trainNum != this.docsTotalNum) {
+            throw new IOException("corpus cache " + cache.getDir()
+                + " is out of date, delete it to build it again");
+        }
+        String[] classNames = cache.getClassNames();
+        Vocabulary vocabulary = counts.getVocabulary();
+        int threads = Math.max(1, Math.min(cache.partNum(), this.conf.getInt(TRAIN_THREADS,
+            Runtime.getRuntime().availableProcessors())));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CompletionService<WordCounts> parsed = new ExecutorCompletionService<>(pool);
+        long[] tokens = new long[cache.partNum()];
+        try {
+            for (int p = 0; p < cache.partNum(); p++) {
+                int part = p;
+                parsed.submit(() -> {
+                    WordCounts partCounts = new WordCounts(vocabulary.isHashed()
+                        ? Vocabulary.hashed(vocabulary.size()) : new Vocabulary());
+                    int[] classIndex = new int[classNames.length];
+                    for (int c = 0; c < classNames.length; c++) {
+                        classIndex[c] = partCounts.addClass(classNames[c]);
+                    }
+                    try (CorpusReader reader = cache.openPart(part)) {
+                        int[] remap = reader.remap(partCounts.getVocabulary(), true);
+                        while (reader.next()) {
+                            if (!train[reader.docId()]) {
+                                continue;
+                            }
+                            int c = classIndex[reader.classId()];
+                            for (int i = 0; i < reader.size(); i++) {
+                                partCounts.add(c, remap[reader.id(i)], reader.tf(i));
+                                tokens[part] += reader.tf(i);
+                            }
+                        }
+                    }
+                    return partCounts;
+                });
+            }
+            for (int p = 0; p < cache.partNum(); p++) {
+                counts.merge(parsed.take().get());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        long total = 0;
+        for (long num : tokens) {
+            total += num;
+        }
+        this.metrics.count(WordCountMapper.WordCountCounter.class.getName() + "."
+            + WordCountMapper.WordCountCounter.TOKENS, total);
+    }
+
+    /**
+     * @param inputs    class directories or documents to count
+     * @param classKeys class keys of the documents, their order gives the
+     *                  class ids of the job
+     * @param output    output directory of the job
+     * @throws Exception just throw
+     */
+    void runWordCountJob(List<Path> inputs, Collection<String> classKeys, Path output)
+        throws Exception {
+        // set on this.conf, which also reads the text output of the job
+        ClassWordKey.setClasses(this.conf, classKeys);
+        Job job = Job.getInstance(this.conf, "naivebayes-wordcount");
+        job.setJarByClass(NaiveBayes.class);
+        job.setMapperClass(WordCountMapper.class);
+        job.setCombinerClass(WordCountReducer.class);
+        job.setReducerClass(WordCountReducer.class);
+        job.setPartitionerClass(ClassWordPartitioner.class);
+        job.setNumReduceTasks(this.conf.getInt(REDUCE_TASKS,
+            Math.max(1, this.classes.size())));
+        job.setOutputKeyClass(ClassWordKey.class);
+        job.setOutputValueClass(IntWritable.class);
+        if (this.conf.getBoolean(MyCombineFileInputFormat.COMBINE_INPUT, true)) {
+            // pack many small documents into each map task
+            job.setInputFormatClass(CombinedTextInputFormat.class);
+        }
+        if (this.conf.getBoolean(JOB_OUTPUT_BINARY, true)) {
+            // binary output, the driver reads it without parsing text
+            job.setOutputFormatClass(CountOutputFormat.class);
+        }
+        FileInputFormat.setInputPaths(job, inputs.toArray(new Path[0]));
+        FileOutputFormat.setOutputPath(job, output);
+        this.metrics.time("word-count", () -> {
+            if (!job.waitForCompletion(true)) {
+                throw new IOException("word count job failed");
+            }
+        });
+        this.metrics.addJobCounters(job);
+    }
+
+    /**
+     * train all classes according to the counted words, the prior is
+     * calculated from the train documents of the split
      *
-     * @param jobResultByClass job output path by specific class
      * @throws Exception
      */
-    private void train(Path jobResultByClass) throws Exception {
-        Map<String, Integer> wordsNumMap = new HashMap<>();
-        int totalNum = 0;
+    private void trainAllClasses() throws Exception {
+        this.metrics.time("prior", () -> {
+            calcPrior(trainDocNum());
+        });
+        this.metrics.time("train", () -> {
+            freeze();
+        });
+    }
+
+    /**
+     * @return the number of train documents of each class
+     */
+    private Map<String, Integer> trainDocNum() {
+        Map<String, Integer> docNum = new HashMap<>();
+        for (Map.Entry<String, ArrayList<String>> entry : this.classes.entrySet()) {
+            docNum.put(entry.getKey(), entry.getValue().size());
+        }
+        return docNum;
+    }
+
+    /**
+     * add the documents of the dataset which are not in the loaded
+     * classifier. the new documents of each class are split like
+     * splitDataSet, only the new train documents are counted and their counts are added to the
+     * counts of the classifier, a class may be new.
+     *
+     * @param args args[0]: dataset directory
+     *             args[1]: output directory of the classifier
+     * @return false if there is no new document
+     * @throws Exception just throw
+     */
+    private boolean trainIncremental(String[] args) throws Exception {
+        loadCounts();
         FileSystem fs = FileSystem.get(this.conf);
-        FileStatus[] fileStatus = fs.listStatus(jobResultByClass,
-            path -> path.getName().startsWith("part-r"));
-        for (FileStatus status : fileStatus) {
-            FSDataInputStream in = fs.open(status.getPath());
-            InputStreamReader isr = new InputStreamReader(in);
-            BufferedReader reader = new BufferedReader(isr);
-            String oneLine = reader.readLine();
-            while (oneLine != null) {
-                String[] line = oneLine.split("\\s");
-                try {
-                    Integer num = Integer.valueOf(line[1]);
-                    totalNum += num;
-                    wordsNumMap.put(line[0], num);
-                } catch (ArrayIndexOutOfBoundsException e) {
-                    System.out.println("---ArrayIndexOutOfBoundsException---");
-                    System.out.println(line.length);
-                    System.out.println(line[0]);
+        Path dataset = new Path(args[0]);
+        TreeMap<String, List<FileStatus>> listing = listDataset(dataset);
+        Map<String, List<String>> newTrain = new TreeMap<>();
+        for (Map.Entry<String, List<FileStatus>> entry : listing.entrySet()) {
+            String className = entry.getKey();
+            ArrayList<String> trainPath =
+                this.classes.computeIfAbsent(className, k -> new ArrayList<>());
+            ArrayList<String> testPath =
+                this.testFile.computeIfAbsent(className, k -> new ArrayList<>());
+            Set<String> known = new HashSet<>(trainPath);
+            known.addAll(testPath);
+            List<String> names = new ArrayList<>();
+            for (String name : names(entry.getValue())) {
+                if (!known.contains(name)) {
+                    names.add(name);
                 }
-                oneLine = reader.readLine();
             }
+            List<String> train = new ArrayList<>();
+            split(names, train, testPath);
+            trainPath.addAll(train);
+            newTrain.put(className, train);
         }
-        this.totalWordsNumByClass.put(jobResultByClass.getName(), totalNum);
-        this.wordsNumByClass.put(jobResultByClass.getName(), wordsNumMap);
+        List<FileStatus> inputs = documents(listing, newTrain);
+        if (inputs.isEmpty()) {
+            logger.info("no new document in " + args[0]);
+            return false;
+        }
+        logger.info(inputs.size() + " new train documents in " + args[0]);
+        this.docsTotalNum += inputs.size();
+        Path delta = new Path(args[1], JOB_OUTPUT + "-v" + (this.version + 1));
+        fs.delete(delta, true);
+        // the delta must be counted like the loaded classifier
+        Vocabulary vocabulary = this.counts.getVocabulary();
+        this.conf.setInt(WordCountMapper.HASH_BUCKETS,
+            vocabulary.isHashed() ? vocabulary.size() : 0);
+        countWords(inputs, delta);
+        this.prior.clear();
+        this.metrics.time("prior", () -> {
+            calcPrior(trainDocNum());
+        });
+        this.metrics.time("train", () -> {
+            freeze();
+        });
+        this.version++;
+        return true;
     }
 
     /**
-     * this is the function to classify a document
+     * build the frozen scoring model from the trained counts
+     */
+    private void freeze() {
+        this.model = ScoringModel.build(this.prior, this.counts);
+    }
+
+    /**
+     * read all part files of the word count job into counts.
+     * the part files are read by TRAIN_THREADS threads, each into its own
+     * word counts, which are merged into counts as they finish.
      *
-     * @param doc the document to classify
-     * @return result class
+     * @param output output directory of the job
+     * @param counts word counts to add the job output to
      * @throws Exception
      */
-    String classify(Path doc) throws Exception {
+    void readJobOutput(Path output, WordCounts counts) throws Exception {
         FileSystem fs = FileSystem.get(this.conf);
-        FSDataInputStream is = fs.open(doc);
-        InputStreamReader isr = new InputStreamReader(is);
-        BufferedReader reader = new BufferedReader(isr);
-        Map<String, Double> similarity = new HashMap<>(this.prior);
-        String word;
-        while ((word = reader.readLine()) != null) {
-            for (Map.Entry<String, Map<String, Integer>> entry :
-                this.wordsNumByClass.entrySet()) {
-                Integer wordCount = entry.getValue().get(word);
-                if (wordCount == null)
-                    wordCount = 0;
-                // probability of a class
-                double sim = (wordCount + 1) / (double)
-                    (this.totalWordsNumByClass.get(entry.getKey()) +
-                        entry.getValue().size());
-                similarity.computeIfPresent(entry.getKey(),
-                    (key, oldValue) -> oldValue + Math.log(sim));
+        FileStatus[] parts = fs.listStatus(output,
+            path -> path.getName().startsWith("part-r"));
+        int threads = Math.min(parts.length, this.conf.getInt(TRAIN_THREADS,
+            Runtime.getRuntime().availableProcessors()));
+        if (threads <= 1) {
+            for (FileStatus part : parts) {
+                JobOutput.read(this.conf, part.getPath(), counts);
             }
+            return;
         }
-        ArrayList<Map.Entry<String, Double>> list =
-            new ArrayList<>(similarity.entrySet());
-        String result = list.get(0).getKey();
-        Double sim = list.get(0).getValue();
-        // get the maximum probability
-        for (int i = 1; i < list.size(); i++) {
-            Double aSim = list.get(i).getValue();
-            if (aSim > sim) {
-                sim = aSim;
-                result = list.get(i).getKey();
+        Vocabulary vocabulary = counts.getVocabulary();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CompletionService<WordCounts> parsed = new ExecutorCompletionService<>(pool);
+        try {
+            for (FileStatus part : parts) {
+                parsed.submit(() -> {
+                    WordCounts partCounts = new WordCounts(vocabulary.isHashed()
+                        ? Vocabulary.hashed(vocabulary.size()) : new Vocabulary());
+                    JobOutput.read(this.conf, part.getPath(), partCounts);
+                    return partCounts;
+                });
             }
+            for (int i = 0; i < parts.length; i++) {
+                counts.merge(parsed.take().get());
+            }
+        } finally {
+            pool.shutdownNow();
         }
-        return result;
+    }
+
+    /**
+     * @param model the scoring model
+     * @param doc   the document to classify
+     * @param fs    file system of the document
+     * @return result class
+     * @throws IOException exception from fs
+     */
+    static String classify(ScoringModel model, Path doc, FileSystem fs)
+        throws IOException {
+        /*
+         *  words are counted into a term vector first, so a word which
+         *  occurs many times in the document is scored only once.
+         */
+        TermVector vector = new TermVector();
+        WordIndex vocabulary = model.getVocabulary();
+        // split words the same way as WordCountMapper
+        try (FSDataInputStream is = fs.open(doc)) {
+            ByteTokenizer.tokenize(is, new byte[READ_BUFFER],
+                (bytes, off, len) -> vector.add(vocabulary.get(bytes, off, len)));
+        }
+        double[] scores = model.newScores();
+        model.addVector(vector, scores);
+        // get the maximum probability
+        return model.best(scores);
     }
 
     /**
@@ -332,16 +728,31 @@ public class NaiveBayes {
      * @throws Exception
      */
     private void save(String[] args) throws Exception {
-        FileSystem fs = FileSystem.get(this.conf);
-        FSDataOutputStream out = fs.create(
-            new Path(args[1] + "/Classifier"));
-        ObjectOutputStream os = new ObjectOutputStream(out);
-        os.writeObject(this.classes);
-        os.writeObject(this.testFile);
-        os.writeObject(this.prior);
-        os.writeObject(this.docsTotalNum);
-        os.writeObject(this.totalWordsNumByClass);
-        os.writeObject(this.wordsNumByClass);
-        os.close();
+        /*
+         *  the model is written once to a temp file, which is renamed to
+         *  Classifier.v<version>. the version is then linked to a second
+         *  temp file, copied where the file system has no hard links, and
+         *  published as Classifier by an atomic rename, so readers of
+         *  either file never see a half written one.
+         */
+        this.metrics.time("save", () -> {
+            FileSystem fs = FileSystem.get(this.conf);
+            FileContext context = FileContext.getFileContext(this.conf);
+            LocalFileSystem local = fs instanceof LocalFileSystem ? (LocalFileSystem) fs : null;
+            Path versioned = new Path(args[1], CLASSIFIER + ".v" + this.version);
+            Path tmp = new Path(args[1], "_" + CLASSIFIER + ".tmp");
+            // a hard link would not share a checksum file, so none is written
+            FileSystem out = local != null ? local.getRaw() : fs;
+            ModelFile.write(out.create(tmp, true), this.classes, this.testFile,
+                this.docsTotalNum, this.version, this.counts, this.model);
+            context.rename(tmp, versioned, Options.Rename.OVERWRITE);
+            if (local != null) {
+                Files.createLink(local.pathToFile(tmp).toPath(),
+                    local.pathToFile(versioned).toPath());
+            } else {
+                FileUtil.copy(fs, versioned, fs, tmp, false, this.conf);
+            }
+            context.rename(tmp, new Path(args[1], CLASSIFIER), Options.Rename.OVERWRITE);
+        });
     }
 }
\ No newline at end of file
@@ -1,13 +1,44 @@
+import classify.ClassifyMapper;
+import classify.DocumentInputFormat;
+import classify.ReadAheadClassifier;
+import classify.TestDocFilter;
+import corpus.CorpusCache;
+import corpus.CorpusReader;
+import metrics.LatencyHistogram;
+import model.ScoringModel;
+import model.TermVector;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import wordcount.WordCount;
+import wordcount.WordCountMapper;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class NaiveBayesTest {
+    // the number of threads to classify test documents of the corpus cache
+    static final String TEST_THREADS = "naivebayes.test.threads";
+    private Configuration conf;
     private NaiveBayes nb;
-    private Map<String, Integer[][]> classMatrix;
+    private Map<String, int[][]> classMatrix;
     private int testDocsNum;
 
     /**
@@ -18,25 +49,44 @@ public class NaiveBayesTest {
      * @throws Exception
      */
     public NaiveBayesTest(Configuration conf, String resultFile) throws Exception {
+        this.conf = conf;
         this.nb = new NaiveBayes(conf, resultFile);
         this.classMatrix = new HashMap<>();
-        for (String s : this.nb.totalWordsNumByClass.keySet()) {
-            Integer[][] matrix = {{0, 0}, {0, 0}};
+        for (String s : this.nb.model.getClassNames()) {
+            int[][] matrix = {{0, 0}, {0, 0}};
             this.classMatrix.put(s, matrix);
         }
     }
 
+    /**
+     * @param args args[0]: dataset directory
+     *             args[1]: output directory of the classifier
+     *             or -mapreduce, dataset directory, output directory
+     *             to classify the test documents with a map reduce job
+     * @throws Exception
+     */
     public static void main(String[] args) throws Exception {
-        if (args.length != 2) {
-            System.out.println("Usage: NaiveBayes \"data dir\" \"output dir\"");
+        boolean mapReduce = args.length == 3 && args[0].equals("-mapreduce");
+        if (args.length != 2 && !mapReduce) {
+            System.out.println("Usage: NaiveBayesTest [-mapreduce] \"data dir\" \"output dir\"");
             return;
         }
         Configuration conf = new Configuration();
         if (System.getProperty("user.name").equals("peng")) {
             conf.set("fs.defaultFS", "hdfs://localhost:8020");
         }
-        NaiveBayesTest nbt = new NaiveBayesTest(conf, args[1] + "/Classifier");
-        nbt.test(args[0]);
+        String dataset = mapReduce ? args[1] : args[0];
+        String output = mapReduce ? args[2] : args[1];
+        NaiveBayesTest nbt = new NaiveBayesTest(conf, output + "/Classifier");
+        nbt.nb.metrics.register();
+        nbt.nb.metrics.time("classify", () -> {
+            if (mapReduce) {
+                nbt.testMapReduce(dataset, output);
+            } else {
+                nbt.test(dataset);
+            }
+        });
+        nbt.nb.writeMetrics(output, "metrics-test.json");
         // macroAverage result
         for (double v : nbt.macroAverage()) {
             System.out.println(v);
@@ -50,25 +100,191 @@ public class NaiveBayesTest {
     }
 
     /**
-     * test each file in NaiveBayes.testFile
+     * test each file in NaiveBayes.testFile.
+     * documents are classified by a ReadAheadClassifier, which reads the
+     * next documents while the current ones are scored, the results are
+     * taken as they are scored and counted by the class of their path.
      * @param dataset dataset
      * @throws Exception
      */
     private void test(String dataset) throws Exception {
+        if (this.conf.get(CorpusCache.CACHE) != null) {
+            Path path = new Path(dataset);
+            testCache(this.nb.corpusCache(path, this.nb.listDataset(path)));
+            return;
+        }
+        List<Path> docs = new ArrayList<>();
         for (Map.Entry<String, ArrayList<String>> entry : this.nb.testFile.entrySet()) {
-            String trueClass = entry.getKey();
             for (String testDoc : entry.getValue()) {
-                Path docPath = new Path(dataset + "/" + trueClass + "/" + testDoc);
-                String resultClass = this.nb.classify(docPath);
-                Integer[][] matrix = this.classMatrix.get(resultClass);
-                if (trueClass.equals(resultClass)) {
-                    matrix[0][0] += 1;
+                docs.add(new Path(dataset + "/" + entry.getKey() + "/" + testDoc));
+            }
+            this.testDocsNum += entry.getValue().size();
+        }
+        long start = System.nanoTime();
+        LatencyHistogram latency = this.nb.metrics.histogram("classify");
+        ReadAheadClassifier classifier = new ReadAheadClassifier(this.conf, this.nb.model);
+        try (ReadAheadClassifier.Batch batch = classifier.classify(docs.iterator(), false)) {
+            while (batch.hasNext()) {
+                ReadAheadClassifier.Result result = batch.next();
+                latency.record(result.getLatencyNanos() / 1000);
+                int[][] matrix = this.classMatrix.get(result.getClassName());
+                if (WordCountMapper.className(result.getPath()).equals(result.getClassName())) {
+                    matrix[0][0]++;
                 } else {
-                    matrix[0][1] += 1;
+                    matrix[0][1]++;
+                }
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println("classified " + docs.size() + " docs with read ahead in "
+            + seconds + "s, " + docs.size() / seconds + " docs/sec");
+        fillMatrix();
+    }
+
+    /**
+     * test the documents in NaiveBayes.testFile which are read from the
+     * corpus cache of the dataset. the part files are read by a pool of
+     * workers, the word ids of a part are mapped to the vocabulary of the
+     * model once and the cached term frequencies are scored without
+     * tokenizing the documents again.
+     * @param cache corpus cache of the dataset
+     * @throws Exception
+     */
+    private void testCache(CorpusCache cache) throws Exception {
+        boolean[] test = cache.select(this.nb.testFile);
+        int docNum = 0;
+        for (boolean doc : test) {
+            docNum += doc ? 1 : 0;
+        }
+        for (ArrayList<String> testDocs : this.nb.testFile.values()) {
+            this.testDocsNum += testDocs.size();
+        }
+        if (docNum != this.testDocsNum) {
+            throw new IOException("corpus cache " + cache.getDir()
+                + " is out of date, delete it to build it again");
+        }
+        ScoringModel model = this.nb.model;
+        String[] classNames = model.getClassNames();
+        Map<String, Integer> classIndex = new HashMap<>();
+        for (int i = 0; i < classNames.length; i++) {
+            classIndex.put(classNames[i], i);
+        }
+        // class id of the cache -> class index of the model
+        String[] cacheClasses = cache.getClassNames();
+        int[] trueClass = new int[cacheClasses.length];
+        for (int c = 0; c < cacheClasses.length; c++) {
+            trueClass[c] = classIndex.getOrDefault(cacheClasses[c], -1);
+        }
+        int threads = Math.max(1, Math.min(cache.partNum(), this.conf.getInt(TEST_THREADS,
+            Runtime.getRuntime().availableProcessors())));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        List<Future<int[][]>> workers = new ArrayList<>();
+        for (int p = 0; p < cache.partNum(); p++) {
+            int part = p;
+            workers.add(pool.submit(() -> {
+                // counts[0]: predicted and true, counts[1]: predicted but false
+                int[][] counts = new int[2][classNames.length];
+                TermVector vector = new TermVector();
+                try (CorpusReader reader = cache.openPart(part)) {
+                    int[] remap = reader.remap(model.getVocabulary());
+                    while (reader.next()) {
+                        if (!test[reader.docId()]) {
+                            continue;
+                        }
+                        vector.clear();
+                        for (int i = 0; i < reader.size(); i++) {
+                            vector.add(remap[reader.id(i)], reader.tf(i));
+                        }
+                        double[] scores = model.newScores();
+                        model.addVector(vector, scores);
+                        int result = model.bestIndex(scores);
+                        counts[result == trueClass[reader.classId()] ? 0 : 1][result]++;
+                    }
                 }
+                return counts;
+            }));
+        }
+        try {
+            for (Future<int[][]> worker : workers) {
+                int[][] counts = worker.get();
+                for (int i = 0; i < classNames.length; i++) {
+                    int[][] matrix = this.classMatrix.get(classNames[i]);
+                    matrix[0][0] += counts[0][i];
+                    matrix[0][1] += counts[1][i];
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println("classified " + docNum + " cached docs with " + threads
+            + " threads in " + seconds + "s, " + docNum / seconds + " docs/sec");
+        fillMatrix();
+    }
+
+    /**
+     * classify the test documents with a map reduce job.
+     * the model file is shipped to the tasks through the distributed cache,
+     * mappers classify the documents where they are stored and a single
+     * reducer sums the (true class, predicted class) pairs, which are read
+     * back into the class matrix.
+     * @param dataset dataset
+     * @param output  output directory of the classifier, the job writes to
+     *                its confusion sub directory
+     * @throws Exception
+     */
+    private void testMapReduce(String dataset, String output) throws Exception {
+        FileSystem fs = FileSystem.get(this.conf);
+        Path model = fs.makeQualified(this.nb.resultFile);
+        Path result = new Path(output, "confusion");
+        fs.delete(result, true);
+        Job job = Job.getInstance(this.conf, "naivebayes-classify");
+        job.getConfiguration().set(ClassifyMapper.MODEL, model.toString());
+        job.getConfiguration().set(TestDocFilter.DATASET, dataset);
+        job.setJarByClass(NaiveBayesTest.class);
+        job.setInputFormatClass(DocumentInputFormat.class);
+        job.setMapperClass(ClassifyMapper.class);
+        job.setCombinerClass(WordCount.IntSumReducer.class);
+        job.setReducerClass(WordCount.IntSumReducer.class);
+        job.setNumReduceTasks(1);
+        job.setOutputKeyClass(Text.class);
+        job.setOutputValueClass(IntWritable.class);
+        job.addCacheFile(new URI(model.toUri() + "#" + ClassifyMapper.CACHE_LINK));
+        FileInputFormat.setInputPathFilter(job, TestDocFilter.class);
+        for (Map.Entry<String, ArrayList<String>> entry : this.nb.testFile.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                FileInputFormat.addInputPath(job, new Path(dataset, entry.getKey()));
             }
             this.testDocsNum += entry.getValue().size();
         }
+        FileOutputFormat.setOutputPath(job, result);
+        long start = System.nanoTime();
+        if (!job.waitForCompletion(true)) {
+            throw new IOException("classify job failed");
+        }
+        this.nb.metrics.addJobCounters(job);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println("classified " + this.testDocsNum + " docs with a map reduce job in "
+            + seconds + "s, " + this.testDocsNum / seconds + " docs/sec");
+        // each line is "trueClass\tpredictedClass\tnumber"
+        for (FileStatus status : fs.listStatus(result,
+            path -> path.getName().startsWith("part-r"))) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                fs.open(status.getPath()), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split("\t");
+                    int[][] matrix = this.classMatrix.get(fields[1]);
+                    int num = Integer.parseInt(fields[2]);
+                    if (fields[0].equals(fields[1])) {
+                        matrix[0][0] += num;
+                    } else {
+                        matrix[0][1] += num;
+                    }
+                }
+            }
+        }
         fillMatrix();
     }
 
@@ -76,7 +292,7 @@ public class NaiveBayesTest {
      * fill class matrix according to information from train result
      */
     private void fillMatrix() {
-        for (Map.Entry<String, Integer[][]> entry : classMatrix.entrySet()) {
+        for (Map.Entry<String, int[][]> entry : classMatrix.entrySet()) {
             ArrayList<String> testFile = this.nb.testFile.get(entry.getKey());
             int docsNum;
             if (testFile != null) {
@@ -84,7 +300,7 @@ public class NaiveBayesTest {
             } else {
                 docsNum = 0;
             }
-            Integer[][] matrix = entry.getValue();
+            int[][] matrix = entry.getValue();
             matrix[1][0] = docsNum - matrix[0][0];
             matrix[1][1] = this.testDocsNum - docsNum - matrix[0][1];
         }
@@ -95,15 +311,27 @@ public class NaiveBayesTest {
      * @return [precision, recall, f1]
      */
     private double[] macroAverage() {
-        double precision = 0, recall = 0;
-        for (Integer[][] matrix : this.classMatrix.values()) {
+        for (int[][] matrix : this.classMatrix.values()) {
             System.out.println(matrix[0][0] + ", " + matrix[0][1]
                 + ", " + matrix[1][0] + ", " + matrix[1][1]);
+        }
+        return macroAverage(this.classMatrix.values());
+    }
+
+    /**
+     * calculate evaluation by macro average, also used by CrossValidation
+     * so its scores can be compared with the test scores
+     * @param matrices {{tp, fp}, {fn, tn}} of each class
+     * @return [precision, recall, f1]
+     */
+    static double[] macroAverage(Collection<int[][]> matrices) {
+        double precision = 0, recall = 0;
+        for (int[][] matrix : matrices) {
             precision += matrix[0][0] / (double) (matrix[0][0] + matrix[0][1]);
             recall += matrix[0][0] / (double) (matrix[0][0] + matrix[1][0]);
         }
-        precision /= this.classMatrix.size();
-        recall /= this.classMatrix.size();
+        precision /= matrices.size();
+        recall /= matrices.size();
         double f1 = 2 * precision * recall / (precision + recall);
         return new double[]{precision, recall, f1};
     }
@@ -113,8 +341,8 @@ public class NaiveBayesTest {
      * @return [precision, recall, f1]
      */
     private double[] microAverage() {
-        Integer[][] matrix = {{0, 0}, {0, 0}};
-        for (Integer[][] value : this.classMatrix.values()) {
+        int[][] matrix = {{0, 0}, {0, 0}};
+        for (int[][] value : this.classMatrix.values()) {
             matrix[0][0] += value[0][0];
             matrix[0][1] += value[0][1];
             matrix[1][0] += value[1][0];
@@ -0,0 +1,110 @@
+package classify;
+
+import model.ModelFile;
+import model.ScoringModel;
+import model.TermVector;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Mapper;
+import wordcount.ByteTokenizer;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * classification mapper of the evaluation job.
+ * the model file is shipped through the distributed cache and loaded once
+ * per task jvm, each document is scored where it is read and the mapper
+ * counts (true class, predicted class) pairs, which are emitted in cleanup
+ * as "trueClass\tpredictedClass" keys with their numbers.
+ */
+public class ClassifyMapper extends Mapper<Text, BytesWritable, Text, IntWritable> {
+    // path of the model file to classify with
+    public static final String MODEL = "naivebayes.classify.model";
+    // name of the link to the cached model file in the task directory
+    public static final String CACHE_LINK = "classifier";
+
+    public enum ClassifyCounter {
+        DOCS, BYTES
+    }
+
+    // model shared by the tasks of a jvm and the path it was loaded from
+    private static ScoringModel cachedModel;
+    private static String cachedPath;
+
+    private ScoringModel model;
+    private ByteTokenizer tokenizer = new ByteTokenizer();
+    private TermVector vector = new TermVector();
+    // true class -> number of documents predicted as each class
+    private Map<String, int[]> confusion = new HashMap<>();
+    private Text pair = new Text();
+    private IntWritable count = new IntWritable();
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        Path path;
+        File link = new File(CACHE_LINK);
+        URI[] cacheFiles = context.getCacheFiles();
+        if (link.exists()) {
+            path = new Path(link.getAbsoluteFile().toURI());
+        } else if (cacheFiles != null && cacheFiles.length > 0) {
+            URI uri = cacheFiles[0];
+            path = new Path(uri.getScheme(), uri.getAuthority(), uri.getPath());
+        } else {
+            path = new Path(context.getConfiguration().get(MODEL));
+        }
+        this.model = load(context.getConfiguration(), path);
+    }
+
+    private static synchronized ScoringModel load(Configuration conf, Path path)
+        throws IOException {
+        String key = path.toString();
+        if (cachedModel == null || !key.equals(cachedPath)) {
+            try (ModelFile.Reader reader = ModelFile.open(conf, path)) {
+                cachedModel = reader.readScoringModel(
+                    conf.getBoolean(ModelFile.OFF_HEAP, true));
+            }
+            cachedPath = key;
+        }
+        return cachedModel;
+    }
+
+    public void map(Text key, BytesWritable value, Context context)
+        throws IOException, InterruptedException {
+        this.vector.clear();
+        this.model.vectorize(value.getBytes(), 0, value.getLength(), this.tokenizer,
+            this.vector);
+        double[] scores = this.model.newScores();
+        this.model.addVector(this.vector, scores);
+        int predicted = this.model.bestIndex(scores);
+        int[] row = this.confusion.get(key.toString());
+        if (row == null) {
+            row = new int[scores.length];
+            this.confusion.put(key.toString(), row);
+        }
+        row[predicted]++;
+        context.getCounter(ClassifyCounter.DOCS).increment(1);
+        context.getCounter(ClassifyCounter.BYTES).increment(value.getLength());
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        String[] classNames = this.model.getClassNames();
+        for (Map.Entry<String, int[]> entry : this.confusion.entrySet()) {
+            int[] row = entry.getValue();
+            for (int c = 0; c < row.length; c++) {
+                if (row[c] > 0) {
+                    this.pair.set(entry.getKey() + "\t" + classNames[c]);
+                    this.count.set(row[c]);
+                    context.write(this.pair, this.count);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package classify;
+
+import filecount.MyCombineFileInputFormat;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileRecordReader;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
+import wordcount.WordCountMapper;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * input format which reads each document as a single record.
+ * many small documents are packed into one split like
+ * CombinedTextInputFormat, the key is the class of the document and the
+ * value holds its bytes.
+ */
+public class DocumentInputFormat extends CombineFileInputFormat<Text, BytesWritable> {
+
+    @Override
+    public List<InputSplit> getSplits(JobContext job) throws IOException {
+        setMaxSplitSize(job.getConfiguration().getLong(
+            MyCombineFileInputFormat.SPLIT_MAXSIZE,
+            MyCombineFileInputFormat.DEFAULT_SPLIT_MAXSIZE));
+        return super.getSplits(job);
+    }
+
+    @Override
+    protected boolean isSplitable(JobContext context, Path file) {
+        return false;
+    }
+
+    public RecordReader<Text, BytesWritable> createRecordReader(InputSplit split,
+                                                                TaskAttemptContext context)
+        throws IOException {
+        return new CombineFileRecordReader<>((CombineFileSplit) split, context,
+            DocumentReader.class);
+    }
+
+    /**
+     * reader of a single document of a combined split
+     */
+    public static class DocumentReader extends RecordReader<Text, BytesWritable> {
+        private final Path path;
+        private final int length;
+        private final Text key;
+        private final BytesWritable value = new BytesWritable();
+        private FSDataInputStream in;
+        private boolean read;
+
+        public DocumentReader(CombineFileSplit split, TaskAttemptContext context,
+                              Integer index) throws IOException {
+            this.path = split.getPath(index);
+            if (split.getLength(index) > Integer.MAX_VALUE) {
+                throw new IOException(this.path + " is too large to classify");
+            }
+            this.length = (int) split.getLength(index);
+            this.key = new Text(WordCountMapper.className(this.path));
+        }
+
+        public void initialize(InputSplit inputSplit, TaskAttemptContext context)
+            throws IOException {
+            this.in = this.path.getFileSystem(context.getConfiguration()).open(this.path);
+        }
+
+        public boolean nextKeyValue() throws IOException {
+            if (this.read) {
+                return false;
+            }
+            this.value.setSize(this.length);
+            IOUtils.readFully(this.in, this.value.getBytes(), 0, this.length);
+            this.read = true;
+            return true;
+        }
+
+        public Text getCurrentKey() {
+            return this.key;
+        }
+
+        public BytesWritable getCurrentValue() {
+            return this.value;
+        }
+
+        public float getProgress() {
+            return this.read ? 1 : 0;
+        }
+
+        public void close() throws IOException {
+            if (this.in != null) {
+                this.in.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,381 @@
+package classify;
+
+import model.ScoringModel;
+import model.TermVector;
+import model.WordIndex;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.Path;
+import wordcount.ByteTokenizer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * batch classification of documents with asynchronous read ahead.
+ * an i/o stage of IO_THREADS threads opens and reads the documents ahead of
+ * the scoring stage and tokenizes them into term vectors, the scoring stage
+ * takes the decoded documents from a queue in batches and scores them with
+ * ScoringModel.scoreBatch, so reads of the next documents overlap with
+ * scoring.
+ * a batch owns DEPTH documents, a path is only read once one of them is
+ * free and a document is free again when its result is taken, so a slow
+ * scorer or consumer stops the reads instead of filling memory.
+ * results are returned in the order of the paths, or unordered as soon as
+ * they are scored, tagged with their path either way.
+ */
+public class ReadAheadClassifier {
+    // the maximum number of documents read ahead of the consumer
+    public static final String DEPTH = "naivebayes.readahead.depth";
+    // the number of threads which read documents
+    public static final String IO_THREADS = "naivebayes.readahead.io.threads";
+    // read buffer size of each i/o thread
+    public static final String BUFFER = "naivebayes.readahead.buffer.bytes";
+    // the number of scorer threads
+    public static final String SCORERS = "naivebayes.readahead.scorers";
+    // maximum documents scored at once by a scorer
+    public static final String BATCH_SIZE = "naivebayes.readahead.batch.size";
+
+    private final Configuration conf;
+    private final Supplier<ScoringModel> model;
+    private final int depth;
+    private final int ioThreads;
+    private final int bufferSize;
+    private final int scorers;
+    private final int batchSize;
+
+    /**
+     * @param conf  config of the file system and the pipeline
+     * @param model the scoring model
+     */
+    public ReadAheadClassifier(Configuration conf, ScoringModel model) {
+        this(conf, () -> model);
+    }
+
+    /**
+     * @param conf  config of the file system and the pipeline
+     * @param model supplier of the current scoring model, which is taken
+     *              once for each document when it is read
+     */
+    public ReadAheadClassifier(Configuration conf, Supplier<ScoringModel> model) {
+        this.conf = conf;
+        this.model = model;
+        this.ioThreads = Math.max(1, conf.getInt(IO_THREADS, 16));
+        this.depth = Math.max(this.ioThreads, conf.getInt(DEPTH, 256));
+        this.bufferSize = Math.max(1024, conf.getInt(BUFFER, 64 * 1024));
+        this.scorers = Math.max(1, conf.getInt(SCORERS,
+            Runtime.getRuntime().availableProcessors()));
+        this.batchSize = Math.max(1, conf.getInt(BATCH_SIZE, 32));
+    }
+
+    /**
+     * classify all documents and wait for the results
+     *
+     * @param docs paths of the documents
+     * @return result of each document in the order of docs
+     * @throws IOException exception from the file system
+     */
+    public List<Result> classifyAll(List<Path> docs) throws IOException {
+        List<Result> results = new ArrayList<>(docs.size());
+        try (Batch batch = classify(docs.iterator(), true)) {
+            while (batch.hasNext()) {
+                results.add(batch.next());
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return results;
+    }
+
+    /**
+     * start to classify documents, the paths are taken from docs as the
+     * read ahead allows. a failed document stops the batch, the exception
+     * is thrown by Batch.hasNext as UncheckedIOException.
+     *
+     * @param docs    paths of the documents
+     * @param ordered return the results in the order of docs, otherwise in
+     *                the order they are scored
+     * @return the running batch
+     */
+    public Batch classify(Iterator<Path> docs, boolean ordered) {
+        return new Batch(docs, ordered);
+    }
+
+    /**
+     * class of a document
+     */
+    public static class Result {
+        private final Path path;
+        private final String className;
+        private final long latencyNanos;
+
+        Result(Path path, String className, long latencyNanos) {
+            this.path = path;
+            this.className = className;
+            this.latencyNanos = latencyNanos;
+        }
+
+        public Path getPath() {
+            return this.path;
+        }
+
+        public String getClassName() {
+            return this.className;
+        }
+
+        /**
+         * @return time from the start of the read to the result
+         */
+        public long getLatencyNanos() {
+            return this.latencyNanos;
+        }
+    }
+
+    /**
+     * a document in the pipeline, reused after its result is taken
+     */
+    private static class Doc {
+        final TermVector vector = new TermVector();
+        long seq;
+        Path path;
+        ScoringModel model;
+        long start;
+        String className;
+        Exception error;
+        // the number of documents, set on the end marker
+        long total = -1;
+    }
+
+    /**
+     * running classification of a sequence of documents
+     */
+    public class Batch implements Iterator<Result>, Closeable {
+        private final Iterator<Path> docs;
+        private final boolean ordered;
+        // documents which are free to read into
+        private final BlockingQueue<Doc> free;
+        // read documents waiting for a scorer
+        private final BlockingQueue<Doc> decoded;
+        // scored documents and the end marker
+        private final BlockingQueue<Doc> scored = new LinkedBlockingQueue<>();
+        private final ExecutorService io;
+        private final ThreadLocal<byte[]> buffer;
+        private final List<Thread> threads = new ArrayList<>();
+        // scored documents which wait for the documents before them
+        private final Map<Long, Doc> pending = new HashMap<>();
+        private long returned;
+        private long total = -1;
+        private Result next;
+        private boolean closed;
+
+        Batch(Iterator<Path> docs, boolean ordered) {
+            this.docs = docs;
+            this.ordered = ordered;
+            int depth = ReadAheadClassifier.this.depth;
+            this.free = new ArrayBlockingQueue<>(depth);
+            this.decoded = new ArrayBlockingQueue<>(depth);
+            for (int i = 0; i < depth; i++) {
+                this.free.add(new Doc());
+            }
+            int bufferSize = ReadAheadClassifier.this.bufferSize;
+            this.buffer = ThreadLocal.withInitial(() -> new byte[bufferSize]);
+            AtomicInteger ioIndex = new AtomicInteger();
+            this.io = Executors.newFixedThreadPool(ReadAheadClassifier.this.ioThreads, r -> {
+                Thread thread = new Thread(r, "read-ahead-io-" + ioIndex.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.threads.add(new Thread(this::dispatch, "read-ahead-dispatcher"));
+            for (int i = 0; i < ReadAheadClassifier.this.scorers; i++) {
+                this.threads.add(new Thread(this::score, "read-ahead-scorer-" + i));
+            }
+            for (Thread thread : this.threads) {
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+
+        /**
+         * take each path into a free document and hand it to the i/o stage
+         */
+        private void dispatch() {
+            Doc end = new Doc();
+            long seq = 0;
+            try {
+                while (this.docs.hasNext()) {
+                    Doc doc = this.free.take();
+                    doc.seq = seq++;
+                    doc.path = this.docs.next();
+                    doc.model = ReadAheadClassifier.this.model.get();
+                    doc.start = System.nanoTime();
+                    this.io.execute(() -> read(doc));
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                end.error = e;
+            }
+            end.total = seq;
+            this.scored.add(end);
+        }
+
+        private void read(Doc doc) {
+            TermVector vector = doc.vector;
+            WordIndex vocabulary = doc.model.getVocabulary();
+            try (FSDataInputStream in = doc.path.getFileSystem(
+                ReadAheadClassifier.this.conf).open(doc.path)) {
+                ByteTokenizer.tokenize(in, this.buffer.get(),
+                    (bytes, off, len) -> vector.add(vocabulary.get(bytes, off, len)));
+            } catch (IOException | RuntimeException e) {
+                doc.error = e;
+            }
+            // never blocks, there are not more documents than its capacity
+            this.decoded.add(doc);
+        }
+
+        /**
+         * score the read documents in batches, a batch is split where the
+         * model changes
+         */
+        private void score() {
+            int batchSize = ReadAheadClassifier.this.batchSize;
+            List<Doc> batch = new ArrayList<>(batchSize);
+            TermVector[] vectors = new TermVector[batchSize];
+            double[][] scores = new double[batchSize][];
+            while (true) {
+                try {
+                    batch.add(this.decoded.take());
+                } catch (InterruptedException e) {
+                    return;
+                }
+                this.decoded.drainTo(batch, batchSize - 1);
+                for (int from = 0, to; from < batch.size(); from = to) {
+                    ScoringModel model = batch.get(from).model;
+                    int num = 0;
+                    for (to = from; to < batch.size() && batch.get(to).model == model; to++) {
+                        if (batch.get(to).error == null) {
+                            vectors[num++] = batch.get(to).vector;
+                        }
+                    }
+                    int classNum = model.getClassNames().length;
+                    if (scores[0] == null || scores[0].length != classNum) {
+                        scores = new double[batchSize][classNum];
+                    }
+                    try {
+                        model.scoreBatch(vectors, num, scores);
+                        for (int i = from, s = 0; i < to; i++) {
+                            Doc doc = batch.get(i);
+                            if (doc.error == null) {
+                                doc.className = model.best(scores[s++]);
+                            }
+                        }
+                    } catch (RuntimeException e) {
+                        for (int i = from; i < to; i++) {
+                            batch.get(i).error = e;
+                        }
+                    }
+                }
+                this.scored.addAll(batch);
+                batch.clear();
+            }
+        }
+
+        /**
+         * @return true if there is another result
+         * @throws UncheckedIOException if a document failed or the wait was
+         *                              interrupted
+         */
+        @Override
+        public boolean hasNext() {
+            if (this.next != null) {
+                return true;
+            }
+            try {
+                while (this.total < 0 || this.returned < this.total) {
+                    Doc doc = this.ordered ? this.pending.remove(this.returned) : null;
+                    if (doc == null) {
+                        doc = this.scored.take();
+                        if (doc.total >= 0) {
+                            if (doc.error != null) {
+                                throw fail(doc.error, "failed to list the documents");
+                            }
+                            this.total = doc.total;
+                            continue;
+                        }
+                        if (this.ordered && doc.seq != this.returned) {
+                            this.pending.put(doc.seq, doc);
+                            continue;
+                        }
+                    }
+                    if (doc.error != null) {
+                        throw fail(doc.error, "failed to classify " + doc.path);
+                    }
+                    this.next = new Result(doc.path, doc.className,
+                        System.nanoTime() - doc.start);
+                    this.returned++;
+                    doc.vector.clear();
+                    doc.model = null;
+                    doc.className = null;
+                    this.free.add(doc);
+                    return true;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new UncheckedIOException(
+                    new InterruptedIOException("interrupted while waiting for a result"));
+            }
+            close();
+            return false;
+        }
+
+        @Override
+        public Result next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Result result = this.next;
+            this.next = null;
+            return result;
+        }
+
+        private RuntimeException fail(Exception error, String message) {
+            close();
+            if (error instanceof IOException) {
+                return new UncheckedIOException(new IOException(message, error));
+            }
+            return (RuntimeException) error;
+        }
+
+        /**
+         * stop all threads of the batch, results which are not taken yet
+         * are dropped
+         */
+        @Override
+        public void close() {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            this.io.shutdownNow();
+            for (Thread thread : this.threads) {
+                thread.interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package classify;
+
+import model.ModelFile;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * input path filter which only accepts the test documents of a model.
+ * the class directories directly under the dataset directory DATASET are
+ * accepted so that they are listed, inside them a document is accepted
+ * if it is in the test split of the model given by ClassifyMapper.MODEL.
+ */
+public class TestDocFilter implements PathFilter, Configurable {
+    // dataset directory of the test documents
+    public static final String DATASET = "naivebayes.classify.dataset";
+
+    private Configuration conf;
+    private Path dataset;
+    private final Map<String, Set<String>> testDocs = new HashMap<>();
+
+    @Override
+    public void setConf(Configuration conf) {
+        this.conf = conf;
+        Map<String, ArrayList<String>> classes = new HashMap<>();
+        Map<String, ArrayList<String>> testFile = new HashMap<>();
+        try (ModelFile.Reader reader = ModelFile.open(conf,
+            new Path(conf.get(ClassifyMapper.MODEL)))) {
+            reader.readSplit(classes, testFile);
+            Path dataset = new Path(conf.get(DATASET));
+            this.dataset = dataset.getFileSystem(conf).makeQualified(dataset);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        for (Map.Entry<String, ArrayList<String>> entry : testFile.entrySet()) {
+            this.testDocs.put(entry.getKey(), new HashSet<>(entry.getValue()));
+        }
+    }
+
+    @Override
+    public Configuration getConf() {
+        return this.conf;
+    }
+
+    @Override
+    public boolean accept(Path path) {
+        Path parent = path.getParent();
+        if (parent == null) {
+            return false;
+        }
+        if (this.dataset.equals(parent)) {
+            return this.testDocs.containsKey(path.getName());
+        }
+        Set<String> docs = this.testDocs.get(parent.getName());
+        return docs != null && this.dataset.equals(parent.getParent())
+            && docs.contains(path.getName());
+    }
+}
@@ -0,0 +1,357 @@
+package corpus;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * tokenized corpus cache of a dataset.
+ * every document is tokenized once and kept as the (word id, tf) pairs of
+ * its distinct words in a few large part files, so training and evaluation
+ * read a few sequential files instead of many small text files and never
+ * tokenize again. the cache is built for one dataset and is not updated,
+ * delete the directory to build it again. the length and modification
+ * time of every document are kept in the index, so a cache of a dataset
+ * whose documents were added, removed or changed is detected by isCurrent.
+ * <pre>
+ * index:      byte MAGIC[4], utf dataset, int classNum, utf class*,
+ *             int docNum, (int classId, utf name, long length,
+ *             long modificationTime)*
+ * part-NNNNN: byte MAGIC[4], record*, vocabulary, long vocabularyOffset
+ * record:     varint classId, varint docId, varint size,
+ *             (varint wordIdDelta, varint tf)*
+ * </pre>
+ * the document id is the position of the document in the index, the word
+ * ids of a part are ids in the vocabulary written at the end of the part.
+ */
+public class CorpusCache {
+    private static final Logger logger = Logger.getLogger(CorpusCache.class);
+    // directory of the corpus cache, no cache is used if not set
+    public static final String CACHE = "naivebayes.corpus.cache";
+    public static final byte[] MAGIC = {'N', 'B', 'T', '2'};
+    static final String INDEX = "index";
+    static final String PART = "part-";
+
+    private final Configuration conf;
+    private final Path dir;
+    private final String dataset;
+    private final String[] classNames;
+    // document id -> class id, name, length and modification time
+    private final int[] docClass;
+    private final String[] docNames;
+    private final long[] docLength;
+    private final long[] docModified;
+    private final Path[] parts;
+
+    private CorpusCache(Configuration conf, Path dir, String dataset, String[] classNames,
+                        int[] docClass, String[] docNames, long[] docLength,
+                        long[] docModified, Path[] parts) {
+        this.conf = conf;
+        this.dir = dir;
+        this.dataset = dataset;
+        this.classNames = classNames;
+        this.docClass = docClass;
+        this.docNames = docNames;
+        this.docLength = docLength;
+        this.docModified = docModified;
+        this.parts = parts;
+    }
+
+    /**
+     * @param conf config of the file system
+     * @param dir  directory of the cache
+     * @return true if the cache is complete
+     * @throws IOException exception from the file system
+     */
+    public static boolean exists(Configuration conf, Path dir) throws IOException {
+        return dir.getFileSystem(conf).exists(new Path(dir, INDEX));
+    }
+
+    /**
+     * tokenize all documents of a dataset into a new cache. the documents
+     * are split into one part per thread, the index is written last, so a
+     * cache without index is incomplete. an incomplete cache in dir is
+     * deleted first, any other content of dir is never deleted.
+     *
+     * @param conf    config of the file system
+     * @param dataset dataset directory
+     * @param listing documents of each class of the dataset
+     * @param dir     directory of the cache
+     * @param threads the number of threads and parts
+     * @return the cache
+     * @throws Exception exception from the file system, or if dir holds
+     *                   files which are not of a corpus cache
+     */
+    public static CorpusCache build(Configuration conf, Path dataset,
+                                    SortedMap<String, List<FileStatus>> listing,
+                                    Path dir, int threads) throws Exception {
+        FileSystem fs = dir.getFileSystem(conf);
+        clear(fs, dir);
+        String[] classNames = listing.keySet().toArray(new String[0]);
+        List<Integer> docClass = new ArrayList<>();
+        List<FileStatus> docs = new ArrayList<>();
+        for (int c = 0; c < classNames.length; c++) {
+            for (FileStatus doc : listing.get(classNames[c])) {
+                docClass.add(c);
+                docs.add(doc);
+            }
+        }
+        int docNum = docs.size();
+        int partNum = Math.max(1, Math.min(threads, docNum));
+        FileSystem dataFs = dataset.getFileSystem(conf);
+        ExecutorService pool = Executors.newFixedThreadPool(partNum);
+        Path[] parts = new Path[partNum];
+        try {
+            List<Future<?>> written = new ArrayList<>();
+            for (int p = 0; p < partNum; p++) {
+                parts[p] = new Path(dir, String.format("%s%05d", PART, p));
+                Path part = parts[p];
+                int from = (int) ((long) docNum * p / partNum);
+                int to = (int) ((long) docNum * (p + 1) / partNum);
+                written.add(pool.submit(() -> {
+                    try (CorpusWriter writer = new CorpusWriter(fs, part)) {
+                        for (int d = from; d < to; d++) {
+                            String className = classNames[docClass.get(d)];
+                            writer.write(docClass.get(d), d, dataFs, new Path(
+                                new Path(dataset, className), docs.get(d).getPath().getName()));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> part : written) {
+                part.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        String qualified = dataFs.makeQualified(dataset).toString();
+        try (FSDataOutputStream raw = fs.create(new Path(dir, INDEX));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(raw))) {
+            out.write(MAGIC);
+            out.writeUTF(qualified);
+            out.writeInt(classNames.length);
+            for (String className : classNames) {
+                out.writeUTF(className);
+            }
+            out.writeInt(docNum);
+            for (int d = 0; d < docNum; d++) {
+                out.writeInt(docClass.get(d));
+                out.writeUTF(docs.get(d).getPath().getName());
+                out.writeLong(docs.get(d).getLen());
+                out.writeLong(docs.get(d).getModificationTime());
+            }
+        }
+        logger.info("cached " + docNum + " documents of " + dataset + " in " + partNum
+            + " parts");
+        int[] classes = new int[docNum];
+        String[] names = new String[docNum];
+        long[] lengths = new long[docNum];
+        long[] modified = new long[docNum];
+        for (int d = 0; d < docNum; d++) {
+            classes[d] = docClass.get(d);
+            names[d] = docs.get(d).getPath().getName();
+            lengths[d] = docs.get(d).getLen();
+            modified[d] = docs.get(d).getModificationTime();
+        }
+        return new CorpusCache(conf, dir, qualified, classNames, classes, names, lengths,
+            modified, parts);
+    }
+
+    /**
+     * delete the directory of an incomplete cache. it is deleted only if it
+     * is empty or holds nothing but an index and part files with their
+     * checksum files, so a cache setting which points to a wrong or shared
+     * directory fails instead of deleting its files.
+     *
+     * @param fs  file system of the cache
+     * @param dir directory of the cache
+     * @throws IOException if dir holds other files, or from the file system
+     */
+    private static void clear(FileSystem fs, Path dir) throws IOException {
+        if (!fs.exists(dir)) {
+            return;
+        }
+        if (!fs.getFileStatus(dir).isDirectory()) {
+            throw new IOException(dir + " is not a directory, can not build a corpus cache in it");
+        }
+        for (FileStatus status : fs.listStatus(dir)) {
+            String name = status.getPath().getName();
+            if (name.startsWith(".") && name.endsWith(".crc")) {
+                name = name.substring(1, name.length() - ".crc".length());
+            }
+            if (!status.isFile() || !name.equals(INDEX) && !name.startsWith(PART)) {
+                throw new IOException(dir + " holds " + status.getPath().getName()
+                    + " and is not a corpus cache, it is not deleted to build one");
+            }
+        }
+        fs.delete(dir, true);
+    }
+
+    /**
+     * @param conf config of the file system
+     * @param dir  directory of the cache
+     * @return the cache
+     * @throws IOException if the cache is not complete
+     */
+    public static CorpusCache open(Configuration conf, Path dir) throws IOException {
+        FileSystem fs = dir.getFileSystem(conf);
+        try (FSDataInputStream raw = fs.open(new Path(dir, INDEX));
+             DataInputStream in = new DataInputStream(new BufferedInputStream(raw, 1 << 16))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException(dir + " is not a corpus cache");
+            }
+            String dataset = in.readUTF();
+            String[] classNames = new String[in.readInt()];
+            for (int c = 0; c < classNames.length; c++) {
+                classNames[c] = in.readUTF();
+            }
+            int docNum = in.readInt();
+            int[] docClass = new int[docNum];
+            String[] docNames = new String[docNum];
+            long[] docLength = new long[docNum];
+            long[] docModified = new long[docNum];
+            for (int d = 0; d < docNum; d++) {
+                docClass[d] = in.readInt();
+                docNames[d] = in.readUTF();
+                docLength[d] = in.readLong();
+                docModified[d] = in.readLong();
+            }
+            FileStatus[] status = fs.listStatus(dir,
+                path -> path.getName().startsWith(PART));
+            Path[] parts = new Path[status.length];
+            for (int p = 0; p < parts.length; p++) {
+                parts[p] = status[p].getPath();
+            }
+            Arrays.sort(parts);
+            return new CorpusCache(conf, dir, dataset, classNames, docClass, docNames,
+                docLength, docModified, parts);
+        }
+    }
+
+    /**
+     * @param dataset a dataset directory
+     * @return true if the cache was built from the dataset
+     * @throws IOException exception from the file system
+     */
+    public boolean isCacheOf(Path dataset) throws IOException {
+        return dataset.getFileSystem(this.conf).makeQualified(dataset).toString()
+            .equals(this.dataset);
+    }
+
+    /**
+     * compare the cached documents with a listing of the dataset, the
+     * cache is out of date if a document was added or removed, or if its
+     * length or modification time changed since the cache was built
+     *
+     * @param listing documents of each class of the dataset
+     * @return true if the cache holds exactly the listed documents
+     */
+    public boolean isCurrent(SortedMap<String, List<FileStatus>> listing) {
+        Map<String, Integer> docIds = new HashMap<>();
+        for (int d = 0; d < docNum(); d++) {
+            docIds.put(this.classNames[this.docClass[d]] + '/' + this.docNames[d], d);
+        }
+        int listed = 0;
+        for (Map.Entry<String, List<FileStatus>> entry : listing.entrySet()) {
+            for (FileStatus doc : entry.getValue()) {
+                Integer d = docIds.get(entry.getKey() + '/' + doc.getPath().getName());
+                if (d == null || this.docLength[d] != doc.getLen()
+                    || this.docModified[d] != doc.getModificationTime()) {
+                    return false;
+                }
+                listed++;
+            }
+        }
+        return listed == docNum();
+    }
+
+    public String[] getClassNames() {
+        return this.classNames;
+    }
+
+    /**
+     * @return the number of documents
+     */
+    public int docNum() {
+        return this.docClass.length;
+    }
+
+    /**
+     * @param docId document id
+     * @return class id of the document
+     */
+    public int docClass(int docId) {
+        return this.docClass[docId];
+    }
+
+    /**
+     * @param docId document id
+     * @return file name of the document
+     */
+    public String docName(int docId) {
+        return this.docNames[docId];
+    }
+
+    /**
+     * @param selected class name -> names of documents
+     * @return true for each document id which is selected
+     */
+    public boolean[] select(Map<String, ? extends List<String>> selected) {
+        boolean[] docs = new boolean[docNum()];
+        List<Set<String>> names = new ArrayList<>();
+        for (String className : this.classNames) {
+            List<String> classDocs = selected.get(className);
+            names.add(classDocs == null ? Collections.emptySet()
+                : new HashSet<>(classDocs));
+        }
+        for (int d = 0; d < docs.length; d++) {
+            docs[d] = names.get(this.docClass[d]).contains(this.docNames[d]);
+        }
+        return docs;
+    }
+
+    /**
+     * @return the number of part files
+     */
+    public int partNum() {
+        return this.parts.length;
+    }
+
+    /**
+     * @param part index of a part file
+     * @return reader of the part
+     * @throws IOException exception from the file system
+     */
+    public CorpusReader openPart(int part) throws IOException {
+        return new CorpusReader(this.parts[part].getFileSystem(this.conf), this.parts[part]);
+    }
+
+    public Path getDir() {
+        return this.dir;
+    }
+}
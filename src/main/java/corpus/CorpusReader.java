@@ -0,0 +1,202 @@
+package corpus;
+
+import model.Vocabulary;
+import model.WordIndex;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * sequential reader of a part file of the corpus cache.
+ * the records are decoded from a read buffer in place, the word ids of a
+ * document are in the vocabulary of the part and can be mapped to another
+ * vocabulary with remap.
+ */
+public class CorpusReader implements Closeable {
+    private final FSDataInputStream in;
+    private final Vocabulary vocabulary;
+    // bytes of records not read into the buffer yet
+    private long remaining;
+    private final byte[] buffer = new byte[1 << 16];
+    private int pos;
+    private int limit;
+    // the current document
+    private int classId;
+    private int docId;
+    private int size;
+    private int[] ids = new int[256];
+    private int[] tfs = new int[256];
+
+    /**
+     * @param fs   file system of the part
+     * @param path the part file
+     * @throws IOException if the file is not a part of a corpus cache
+     */
+    public CorpusReader(FileSystem fs, Path path) throws IOException {
+        long length = fs.getFileStatus(path).getLen();
+        this.in = fs.open(path);
+        try {
+            byte[] magic = new byte[CorpusCache.MAGIC.length];
+            if (length < magic.length + 8) {
+                throw new IOException(path + " is not a corpus cache part");
+            }
+            this.in.readFully(0, magic);
+            if (!Arrays.equals(magic, CorpusCache.MAGIC)) {
+                throw new IOException(path + " is not a corpus cache part");
+            }
+            this.in.seek(length - 8);
+            long offset = this.in.readLong();
+            this.in.seek(offset);
+            this.vocabulary = Vocabulary.read(new DataInputStream(
+                new BufferedInputStream(this.in, 1 << 16)));
+            this.in.seek(magic.length);
+            this.remaining = offset - magic.length;
+        } catch (IOException | RuntimeException e) {
+            // a truncated or corrupt part must not leak the stream
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return vocabulary of the word ids of the part
+     */
+    public Vocabulary getVocabulary() {
+        return this.vocabulary;
+    }
+
+    /**
+     * map the word ids of the part to the ids of another vocabulary
+     *
+     * @param target the other vocabulary
+     * @param add    add the words which are not in target, otherwise they
+     *               are mapped to -1
+     * @return id in target of each word id of the part
+     */
+    public int[] remap(Vocabulary target, boolean add) {
+        if (!add) {
+            return remap(target);
+        }
+        int[] remap = new int[this.vocabulary.size()];
+        byte[] words = this.vocabulary.wordBytes();
+        for (int id = 0; id < remap.length; id++) {
+            int off = this.vocabulary.wordOffset(id);
+            remap[id] = target.add(words, off, this.vocabulary.wordOffset(id + 1) - off);
+        }
+        return remap;
+    }
+
+    /**
+     * map the word ids of the part to the ids of a read only vocabulary
+     *
+     * @param target the other vocabulary
+     * @return id in target of each word id of the part, -1 for a word
+     * which is not in target
+     */
+    public int[] remap(WordIndex target) {
+        int[] remap = new int[this.vocabulary.size()];
+        byte[] words = this.vocabulary.wordBytes();
+        for (int id = 0; id < remap.length; id++) {
+            int off = this.vocabulary.wordOffset(id);
+            remap[id] = target.get(words, off, this.vocabulary.wordOffset(id + 1) - off);
+        }
+        return remap;
+    }
+
+    /**
+     * move to the next document
+     *
+     * @return false if there is no more document
+     * @throws IOException exception from the file or a corrupt file
+     */
+    public boolean next() throws IOException {
+        if (this.pos == this.limit && !fill()) {
+            return false;
+        }
+        this.classId = readVarint();
+        this.docId = readVarint();
+        this.size = readVarint();
+        if (this.size > this.ids.length) {
+            this.ids = new int[Math.max(this.size, this.ids.length << 1)];
+            this.tfs = new int[this.ids.length];
+        }
+        int id = 0;
+        for (int i = 0; i < this.size; i++) {
+            id += readVarint();
+            this.ids[i] = id;
+            this.tfs[i] = readVarint();
+        }
+        return true;
+    }
+
+    public int classId() {
+        return this.classId;
+    }
+
+    public int docId() {
+        return this.docId;
+    }
+
+    /**
+     * @return the number of distinct words of the document
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @param i index in [0, size), words are in id order
+     * @return word id in the vocabulary of the part
+     */
+    public int id(int i) {
+        return this.ids[i];
+    }
+
+    /**
+     * @param i index in [0, size)
+     * @return term frequency of the word
+     */
+    public int tf(int i) {
+        return this.tfs[i];
+    }
+
+    private int readVarint() throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            if (this.pos == this.limit && !fill()) {
+                throw new EOFException("truncated corpus cache part");
+            }
+            byte b = this.buffer[this.pos++];
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private boolean fill() throws IOException {
+        if (this.remaining == 0) {
+            return false;
+        }
+        int n = this.in.read(this.buffer, 0, (int) Math.min(this.buffer.length, this.remaining));
+        if (n <= 0) {
+            throw new EOFException("truncated corpus cache part");
+        }
+        this.remaining -= n;
+        this.pos = 0;
+        this.limit = n;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.in.close();
+    }
+}
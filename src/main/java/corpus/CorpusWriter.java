@@ -0,0 +1,78 @@
+package corpus;
+
+import model.TermVector;
+import model.Vocabulary;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import wordcount.ByteTokenizer;
+import wordcount.CountOutputFormat;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * writer of a part file of the corpus cache.
+ * each document is tokenized once into a term vector over the vocabulary
+ * of the part and written as its sorted (word id, tf) pairs, the word ids
+ * delta encoded. the vocabulary follows the records.
+ */
+public class CorpusWriter implements Closeable {
+    private final FSDataOutputStream raw;
+    private final DataOutputStream out;
+    private final Vocabulary vocabulary = new Vocabulary();
+    private final TermVector vector = new TermVector();
+    private byte[] buffer = new byte[64 * 1024];
+
+    /**
+     * @param fs   file system of the part
+     * @param path the part file
+     * @throws IOException exception from fs
+     */
+    public CorpusWriter(FileSystem fs, Path path) throws IOException {
+        this.raw = fs.create(path, true);
+        this.out = new DataOutputStream(new BufferedOutputStream(this.raw, 1 << 16));
+        this.out.write(CorpusCache.MAGIC);
+    }
+
+    /**
+     * tokenize a document and write it
+     *
+     * @param classId class id of the document in the cache
+     * @param docId   document id in the cache
+     * @param fs      file system of the document
+     * @param doc     the document
+     * @throws IOException exception from fs
+     */
+    public void write(int classId, int docId, FileSystem fs, Path doc) throws IOException {
+        TermVector vector = this.vector;
+        Vocabulary vocabulary = this.vocabulary;
+        vector.clear();
+        try (FSDataInputStream in = fs.open(doc)) {
+            ByteTokenizer.tokenize(in, this.buffer,
+                (bytes, off, len) -> vector.add(vocabulary.add(bytes, off, len)));
+        }
+        vector.sort();
+        CountOutputFormat.writeVarint(this.out, classId);
+        CountOutputFormat.writeVarint(this.out, docId);
+        CountOutputFormat.writeVarint(this.out, vector.size());
+        int last = 0;
+        for (int i = 0; i < vector.size(); i++) {
+            CountOutputFormat.writeVarint(this.out, vector.id(i) - last);
+            CountOutputFormat.writeVarint(this.out, vector.tf(i));
+            last = vector.id(i);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.out.flush();
+        long offset = this.raw.getPos();
+        this.vocabulary.write(this.out);
+        this.out.writeLong(offset);
+        this.out.close();
+    }
+}
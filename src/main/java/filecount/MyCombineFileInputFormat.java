@@ -0,0 +1,89 @@
+package filecount;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileRecordReader;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * combined variant of MyFileInputFormat.
+ * many small documents are packed into one split, up to SPLIT_MAXSIZE
+ * bytes, and each document still yields one (class, 1) record.
+ */
+public class MyCombineFileInputFormat extends CombineFileInputFormat<Text, IntWritable> {
+    // use the combined input formats for the counting and word count jobs
+    public static final String COMBINE_INPUT = "naivebayes.combine.input";
+    // maximum bytes of documents packed into one split
+    public static final String SPLIT_MAXSIZE = "naivebayes.combine.split.maxsize";
+    public static final long DEFAULT_SPLIT_MAXSIZE = 64 * 1024 * 1024;
+
+    @Override
+    public List<InputSplit> getSplits(JobContext job) throws IOException {
+        setMaxSplitSize(job.getConfiguration().getLong(SPLIT_MAXSIZE,
+            DEFAULT_SPLIT_MAXSIZE));
+        return super.getSplits(job);
+    }
+
+    @Override
+    protected boolean isSplitable(JobContext context, Path file) {
+        return false;
+    }
+
+    public RecordReader<Text, IntWritable> createRecordReader(InputSplit split,
+                                                              TaskAttemptContext context)
+        throws IOException {
+        return new CombineFileRecordReader<>((CombineFileSplit) split, context,
+            MyCombineReader.class);
+    }
+
+    /**
+     * MyReader over a single document of a combined split
+     */
+    public static class MyCombineReader extends RecordReader<Text, IntWritable> {
+        private final MyFileInputFormat.MyReader reader;
+        private final FileSplit fileSplit;
+
+        public MyCombineReader(CombineFileSplit split, TaskAttemptContext context,
+                               Integer index) {
+            this.reader = new MyFileInputFormat.MyReader();
+            this.fileSplit = new FileSplit(split.getPath(index),
+                split.getOffset(index), split.getLength(index),
+                (String[]) null);
+        }
+
+        public void initialize(InputSplit inputSplit, TaskAttemptContext context)
+            throws IOException, InterruptedException {
+            this.reader.initialize(this.fileSplit, context);
+        }
+
+        public boolean nextKeyValue() throws IOException, InterruptedException {
+            return this.reader.nextKeyValue();
+        }
+
+        public Text getCurrentKey() throws IOException, InterruptedException {
+            return this.reader.getCurrentKey();
+        }
+
+        public IntWritable getCurrentValue() throws IOException, InterruptedException {
+            return this.reader.getCurrentValue();
+        }
+
+        public float getProgress() throws IOException, InterruptedException {
+            return this.reader.getProgress();
+        }
+
+        public void close() throws IOException {
+            this.reader.close();
+        }
+    }
+}
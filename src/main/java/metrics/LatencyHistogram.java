@@ -0,0 +1,88 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * lock free log-linear histogram of latencies in microseconds.
+ * values below 16 have their own bucket, larger values are split into 8
+ * buckets per power of two, so a percentile is within 12.5% of the
+ * recorded value.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKETS = 8;
+    private static final int BUCKETS = 16 + (64 - 4) * SUB_BUCKETS;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param micros latency in microseconds
+     */
+    public void record(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        }
+        this.counts.incrementAndGet(bucket(micros));
+        this.total.incrementAndGet();
+        this.sum.addAndGet(micros);
+        long old;
+        while (micros > (old = this.max.get())) {
+            if (this.max.compareAndSet(old, micros)) {
+                break;
+            }
+        }
+    }
+
+    public long count() {
+        return this.total.get();
+    }
+
+    public long max() {
+        return this.max.get();
+    }
+
+    public double mean() {
+        long count = this.total.get();
+        return count == 0 ? 0 : this.sum.get() / (double) count;
+    }
+
+    /**
+     * @param p percentile in (0, 100]
+     * @return upper bound of the bucket holding the percentile
+     */
+    public long percentile(double p) {
+        long count = this.total.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * p / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += this.counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), this.max.get());
+            }
+        }
+        return this.max.get();
+    }
+
+    static int bucket(long value) {
+        if (value < 16) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - 3)) & (SUB_BUCKETS - 1);
+        return 16 + (exponent - 4) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < 16) {
+            return bucket;
+        }
+        int exponent = (bucket - 16) / SUB_BUCKETS + 4;
+        int sub = (bucket - 16) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (exponent - 3)) - 1;
+    }
+}
@@ -0,0 +1,241 @@
+package metrics;
+
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.CounterGroup;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.log4j.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * metrics of a training or test run.
+ * the wall time of each phase, the counters of the map reduce jobs and
+ * latency histograms are collected here, exported through jmx while the
+ * run is going on and written as a json report at the end.
+ */
+public class PipelineMetrics implements PipelineMetricsMXBean {
+    private static final Logger logger = Logger.getLogger(PipelineMetrics.class);
+    // path of the json report, the caller picks a default under its output
+    public static final String REPORT = "naivebayes.metrics.report";
+
+    private final String name;
+    // phase -> wall time in milliseconds, in the order the phases finished
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+    private final Map<String, Long> counters = new TreeMap<>();
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    /**
+     * @param name name of the run, used for the jmx object name
+     */
+    public PipelineMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * run a phase and record its wall time, also if it fails
+     *
+     * @param phase name of the phase
+     * @param body  the phase
+     * @param <E>   exception of the phase
+     * @throws E exception from body
+     */
+    public <E extends Exception> void time(String phase, Phase<E> body) throws E {
+        long start = System.nanoTime();
+        try {
+            body.run();
+        } finally {
+            phase(phase, (System.nanoTime() - start) / 1000000);
+        }
+    }
+
+    /**
+     * run a phase which has a result and record its wall time, also if it
+     * fails
+     *
+     * @param phase name of the phase
+     * @param body  the phase
+     * @param <T>   result of the phase
+     * @param <E>   exception of the phase
+     * @return result of body
+     * @throws E exception from body
+     */
+    public <T, E extends Exception> T time(String phase, ResultPhase<T, E> body) throws E {
+        long start = System.nanoTime();
+        try {
+            return body.run();
+        } finally {
+            phase(phase, (System.nanoTime() - start) / 1000000);
+        }
+    }
+
+    /**
+     * @param phase  name of the phase, times of the same phase are added
+     * @param millis wall time in milliseconds
+     */
+    public synchronized void phase(String phase, long millis) {
+        this.phases.merge(phase, millis, Long::sum);
+        logger.info("phase " + phase + " took " + millis + " ms");
+    }
+
+    /**
+     * @param name name of the histogram
+     * @return the histogram, created on first use
+     */
+    public LatencyHistogram histogram(String name) {
+        return this.histograms.computeIfAbsent(name, k -> new LatencyHistogram());
+    }
+
+    /**
+     * @param counter name of the counter
+     * @param value   value to add
+     */
+    public synchronized void count(String counter, long value) {
+        this.counters.merge(counter, value, Long::sum);
+    }
+
+    /**
+     * add all counters of a finished job
+     *
+     * @param job the job
+     * @throws IOException exception from the job client
+     */
+    public void addJobCounters(Job job) throws IOException {
+        for (CounterGroup group : job.getCounters()) {
+            for (Counter counter : group) {
+                count(group.getName() + "." + counter.getName(), counter.getValue());
+            }
+        }
+    }
+
+    /**
+     * register this as an mbean of the platform mbean server, a failure is
+     * only logged
+     */
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(
+                "naivebayes:type=PipelineMetrics,name=" + ObjectName.quote(this.name));
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(this, objectName);
+            }
+        } catch (JMException e) {
+            logger.warn("can not register metrics " + this.name, e);
+        }
+    }
+
+    @Override
+    public synchronized Map<String, Long> getPhaseMillis() {
+        return new LinkedHashMap<>(this.phases);
+    }
+
+    @Override
+    public synchronized Map<String, Long> getCounters() {
+        return new TreeMap<>(this.counters);
+    }
+
+    @Override
+    public Map<String, Double> getLatencies() {
+        Map<String, Double> latencies = new TreeMap<>();
+        for (Map.Entry<String, LatencyHistogram> entry : this.histograms.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            String prefix = entry.getKey() + ".";
+            latencies.put(prefix + "count", (double) histogram.count());
+            latencies.put(prefix + "mean", histogram.mean());
+            latencies.put(prefix + "p50", (double) histogram.percentile(50));
+            latencies.put(prefix + "p99", (double) histogram.percentile(99));
+            latencies.put(prefix + "p999", (double) histogram.percentile(99.9));
+            latencies.put(prefix + "max", (double) histogram.max());
+        }
+        return latencies;
+    }
+
+    @Override
+    public String getJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"name\": ").append(quote(this.name));
+        json.append(",\n \"phase_ms\": {");
+        appendMap(json, getPhaseMillis());
+        json.append("},\n \"counters\": {");
+        appendMap(json, getCounters());
+        json.append("},\n \"latency_us\": {");
+        boolean first = true;
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(this.histograms).entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            json.append(first ? "" : ", ").append(quote(entry.getKey()))
+                .append(": {\"count\": ").append(histogram.count())
+                .append(", \"mean\": ").append(histogram.mean())
+                .append(", \"p50\": ").append(histogram.percentile(50))
+                .append(", \"p99\": ").append(histogram.percentile(99))
+                .append(", \"p999\": ").append(histogram.percentile(99.9))
+                .append(", \"max\": ").append(histogram.max()).append('}');
+            first = false;
+        }
+        json.append("}}\n");
+        return json.toString();
+    }
+
+    /**
+     * write the json report
+     *
+     * @param fs   file system of the report
+     * @param path path of the report
+     * @throws IOException exception from fs
+     */
+    public void writeJson(FileSystem fs, Path path) throws IOException {
+        try (FSDataOutputStream out = fs.create(path, true)) {
+            out.write(getJson().getBytes(StandardCharsets.UTF_8));
+        }
+        logger.info("metrics written to " + path);
+    }
+
+    private static void appendMap(StringBuilder json, Map<String, Long> map) {
+        boolean first = true;
+        for (Map.Entry<String, Long> entry : map.entrySet()) {
+            json.append(first ? "" : ", ").append(quote(entry.getKey()))
+                .append(": ").append(entry.getValue());
+            first = false;
+        }
+    }
+
+    private static String quote(String s) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * a timed phase
+     */
+    public interface Phase<E extends Exception> {
+        void run() throws E;
+    }
+
+    /**
+     * a timed phase which has a result
+     */
+    public interface ResultPhase<T, E extends Exception> {
+        T run() throws E;
+    }
+}
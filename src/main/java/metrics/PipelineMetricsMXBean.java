@@ -0,0 +1,29 @@
+package metrics;
+
+import java.util.Map;
+
+/**
+ * jmx view of PipelineMetrics
+ */
+public interface PipelineMetricsMXBean {
+    /**
+     * @return wall time of each finished phase in milliseconds
+     */
+    Map<String, Long> getPhaseMillis();
+
+    /**
+     * @return counters of the jobs, named "group.counter"
+     */
+    Map<String, Long> getCounters();
+
+    /**
+     * @return count, mean and percentiles of each latency histogram in
+     * microseconds, named "histogram.statistic"
+     */
+    Map<String, Double> getLatencies();
+
+    /**
+     * @return all metrics as json
+     */
+    String getJson();
+}
@@ -0,0 +1,104 @@
+package model;
+
+/**
+ * scoring model whose logProb table is a single array on the java heap,
+ * built from the trained counts or read from a model file.
+ */
+class HeapScoringModel extends ScoringModel {
+    // double[word id * classNum + class index]: log probability of a word,
+    // at most MAX_TABLE entries, so the index of a word never overflows
+    private final double[] logProb;
+
+    HeapScoringModel(String[] classNames, double[] logPrior, WordIndex vocabulary,
+                     double[] logProb, double[] unseen) {
+        super(classNames, logPrior, vocabulary, unseen);
+        this.logProb = logProb;
+    }
+
+    @Override
+    public void addVector(TermVector vector, double[] scores) {
+        int classNum = scores.length;
+        vector.sort();
+        addUnseen(vector, scores);
+        double[] logProb = this.logProb;
+        for (int i = 0; i < vector.size(); i++) {
+            int base = vector.id(i) * classNum;
+            int tf = vector.tf(i);
+            for (int c = 0; c < classNum; c++) {
+                scores[c] += tf * logProb[base + c];
+            }
+        }
+    }
+
+    @Override
+    public void scoreBatch(TermVector[] vectors, int num, double[][] scores) {
+        int classNum = this.logPrior.length;
+        int[] cursor = cursor(num);
+        for (int d = 0; d < num; d++) {
+            vectors[d].sort();
+            System.arraycopy(this.logPrior, 0, scores[d], 0, classNum);
+            addUnseen(vectors[d], scores[d]);
+        }
+        double[] logProb = this.logProb;
+        int blockWords = Math.max(1, BLOCK_BYTES / 8 / classNum);
+        int vocabularySize = logProb.length / classNum;
+        for (int end = blockWords; end - blockWords < vocabularySize; end += blockWords) {
+            for (int d = 0; d < num; d++) {
+                TermVector vector = vectors[d];
+                double[] docScores = scores[d];
+                int i = cursor[d];
+                for (; i < vector.size() && vector.id(i) < end; i++) {
+                    int base = vector.id(i) * classNum;
+                    int tf = vector.tf(i);
+                    for (int c = 0; c < classNum; c++) {
+                        docScores[c] += tf * logProb[base + c];
+                    }
+                }
+                cursor[d] = i;
+            }
+        }
+    }
+
+    @Override
+    public void addWordId(int wordId, double[] scores) {
+        int classNum = scores.length;
+        if (wordId < 0) {
+            for (int c = 0; c < classNum; c++) {
+                scores[c] += this.unseen[c];
+            }
+        } else {
+            double[] logProb = this.logProb;
+            int base = wordId * classNum;
+            for (int c = 0; c < classNum; c++) {
+                scores[c] += logProb[base + c];
+            }
+        }
+    }
+
+    @Override
+    void addWordId(int wordId, int tf, int[] classes, int classesNum, double[] scores) {
+        double[] logProb = this.logProb;
+        int classNum = scores.length;
+        int base = wordId * classNum;
+        if (classesNum == classNum) {
+            for (int c = 0; c < classNum; c++) {
+                scores[c] += tf * logProb[base + c];
+            }
+            return;
+        }
+        for (int i = 0; i < classesNum; i++) {
+            int c = classes[i];
+            scores[c] += tf * logProb[base + c];
+        }
+    }
+
+    @Override
+    double logProb(long index) {
+        return this.logProb[(int) index];
+    }
+
+    @Override
+    long length() {
+        return this.logProb.length;
+    }
+}
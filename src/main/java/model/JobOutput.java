@@ -0,0 +1,240 @@
+package model;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.log4j.Logger;
+import wordcount.ClassWordKey;
+import wordcount.CountOutputFormat;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * reader of the part files of the word count job.
+ * a part file is either written by CountOutputFormat or text with lines
+ * of "classId\tword\tnumber" with the class ids of ClassWordKey.CLASSES.
+ * with a hashed vocabulary the word is the bucket computed by the mapper.
+ */
+public class JobOutput {
+    private static final Logger logger = Logger.getLogger(JobOutput.class);
+
+    private JobOutput() {
+    }
+
+    /**
+     * add the counts of one part file in either format
+     *
+     * @param conf   config of the job, which holds the class list
+     * @param part   the part file
+     * @param counts word counts to add to
+     * @throws IOException exception from the file
+     */
+    public static void read(Configuration conf, Path part, WordCounts counts)
+        throws IOException {
+        FileSystem fs = part.getFileSystem(conf);
+        FSDataInputStream in = fs.open(part);
+        byte[] magic = new byte[CountOutputFormat.MAGIC.length];
+        int n = 0;
+        int r;
+        while (n < magic.length && (r = in.read(magic, n, magic.length - n)) > 0) {
+            n += r;
+        }
+        in.seek(0);
+        if (Arrays.equals(magic, CountOutputFormat.MAGIC)) {
+            readCountFile(in, counts);
+        } else {
+            read(in, ClassWordKey.getClasses(conf), counts);
+        }
+    }
+
+    /**
+     * add the counts of one part file written by CountOutputFormat.
+     * the records are decoded from a read buffer in place, a word is added
+     * to the vocabulary as bytes of the key and a class is looked up by
+     * its id, no key is deserialized.
+     *
+     * @param in     part file, closed at the end
+     * @param counts word counts to add to
+     * @throws IOException exception from in or a corrupt file
+     */
+    public static void readCountFile(InputStream in, WordCounts counts) throws IOException {
+        Vocabulary vocabulary = counts.getVocabulary();
+        byte[] buffer = new byte[1 << 16];
+        int pos = 0;
+        int limit = 0;
+        try {
+            in = new BufferedInputStream(in, 1 << 16);
+            String[] classes = readHeader(in);
+            // class id -> class index of counts, -1 before the first word
+            int[] classIndex = new int[classes.length];
+            Arrays.fill(classIndex, -1);
+            while (true) {
+                // a key is at most two varints of 5 bytes before its word
+                if (limit - pos < 15) {
+                    limit = compact(in, buffer, pos, limit);
+                    pos = 0;
+                    if (limit == 0) {
+                        break;
+                    }
+                }
+                int classId = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = buffer[pos++];
+                    classId |= (b & 0x7f) << shift;
+                    if (b >= 0) {
+                        break;
+                    }
+                }
+                int header = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = buffer[pos++];
+                    header |= (b & 0x7f) << shift;
+                    if (b >= 0) {
+                        break;
+                    }
+                }
+                int length = (header & 1) == 0 ? header >>> 1 : 0;
+                if (limit - pos < length + 5) {
+                    if (length + 5 > buffer.length) {
+                        buffer = Arrays.copyOf(buffer, length + 5);
+                    }
+                    limit = compact(in, buffer, pos, limit);
+                    pos = 0;
+                }
+                int word = pos;
+                pos += length;
+                int count = 0;
+                for (int shift = 0; ; shift += 7) {
+                    if (pos >= limit) {
+                        throw new EOFException("truncated count file");
+                    }
+                    byte b = buffer[pos++];
+                    count |= (b & 0x7f) << shift;
+                    if (b >= 0) {
+                        break;
+                    }
+                }
+                if (classId >= classes.length) {
+                    throw new IOException("bad class id in count file: " + classId);
+                }
+                int c = classIndex[classId];
+                if (c < 0) {
+                    c = classIndex[classId] = counts.addClass(classes[classId]);
+                }
+                int wordId;
+                if ((header & 1) == 0) {
+                    wordId = vocabulary.add(buffer, word, length);
+                } else if (vocabulary.isHashed()) {
+                    wordId = header >>> 1;
+                } else {
+                    throw new IOException("word id in count file of a vocabulary of words");
+                }
+                counts.add(c, wordId, count);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @param in count file
+     * @return class names of the job in class id order
+     */
+    private static String[] readHeader(InputStream in) throws IOException {
+        byte[] magic = new byte[CountOutputFormat.MAGIC.length];
+        readFully(in, magic);
+        String[] classes = new String[readVarint(in)];
+        for (int i = 0; i < classes.length; i++) {
+            byte[] name = new byte[readVarint(in)];
+            readFully(in, name);
+            classes[i] = Text.decode(name);
+        }
+        return classes;
+    }
+
+    private static int readVarint(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("truncated count file");
+            }
+            value |= (b & 0x7f) << shift;
+            if (b < 0x80) {
+                return value;
+            }
+        }
+    }
+
+    private static void readFully(InputStream in, byte[] bytes) throws IOException {
+        int n = 0;
+        int r;
+        while (n < bytes.length && (r = in.read(bytes, n, bytes.length - n)) > 0) {
+            n += r;
+        }
+        if (n < bytes.length) {
+            throw new EOFException("truncated count file");
+        }
+    }
+
+    /**
+     * move the unread bytes to the front of the buffer and fill it
+     *
+     * @return the number of bytes in the buffer
+     */
+    private static int compact(InputStream in, byte[] buffer, int pos, int limit)
+        throws IOException {
+        System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+        return fill(in, buffer, limit - pos);
+    }
+
+    private static int fill(InputStream in, byte[] buffer, int limit) throws IOException {
+        int n;
+        while (limit < buffer.length && (n = in.read(buffer, limit, buffer.length - limit)) > 0) {
+            limit += n;
+        }
+        return limit;
+    }
+
+    /**
+     * add the counts of one part file
+     *
+     * @param in      part file, closed at the end
+     * @param classes class names of the job in class id order
+     * @param counts  word counts to add to
+     * @throws IOException exception from in
+     */
+    public static void read(InputStream in, String[] classes, WordCounts counts)
+        throws IOException {
+        InputStreamReader isr = new InputStreamReader(in, StandardCharsets.UTF_8);
+        BufferedReader reader = new BufferedReader(isr);
+        boolean hashed = counts.getVocabulary().isHashed();
+        String oneLine = reader.readLine();
+        while (oneLine != null) {
+            String[] line = oneLine.split("\t", -1);
+            int classId = line.length == 3 ? Integer.parseInt(line[0]) : -1;
+            if (classId < 0 || classId >= classes.length) {
+                logger.warn("bad line in job output: " + oneLine);
+            } else {
+                int classIndex = counts.addClass(classes[classId]);
+                if (hashed) {
+                    counts.add(classIndex, Integer.parseInt(line[1]),
+                        Integer.parseInt(line[2]));
+                } else {
+                    counts.add(classIndex, line[1], Integer.parseInt(line[2]));
+                }
+            }
+            oneLine = reader.readLine();
+        }
+        reader.close();
+    }
+}
@@ -0,0 +1,62 @@
+package model;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.ObjectInputStream;
+import java.io.OptionalDataException;
+import java.util.ArrayList;
+import java.util.Map;
+
+/**
+ * convert a Classifier file written with ObjectOutputStream to ModelFile.
+ * both the original layout of six serialized objects and the later one
+ * with WordCounts written after the prior are accepted.
+ */
+public class LegacyModelConverter {
+
+    /**
+     * @param args args[0]: old classifier file
+     *             args[1]: new model file
+     * @throws Exception
+     */
+    @SuppressWarnings("unchecked")
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.out.println("Usage: LegacyModelConverter \"old file\" \"new file\"");
+            return;
+        }
+        Configuration conf = new Configuration();
+        FileSystem fs = FileSystem.get(conf);
+        ObjectInputStream is = new ObjectInputStream(fs.open(new Path(args[0])));
+        Map<String, ArrayList<String>> classes =
+            (Map<String, ArrayList<String>>) is.readObject();
+        Map<String, ArrayList<String>> testFile =
+            (Map<String, ArrayList<String>>) is.readObject();
+        Map<String, Double> prior = (Map<String, Double>) is.readObject();
+        int docsTotalNum = (int) is.readObject();
+        WordCounts counts;
+        try {
+            // original layout: totalWordsNumByClass, wordsNumByClass
+            is.readObject();
+            Map<String, Map<String, Integer>> wordsNumByClass =
+                (Map<String, Map<String, Integer>>) is.readObject();
+            counts = new WordCounts();
+            for (Map.Entry<String, Map<String, Integer>> entry :
+                wordsNumByClass.entrySet()) {
+                int c = counts.addClass(entry.getKey());
+                for (Map.Entry<String, Integer> word : entry.getValue().entrySet()) {
+                    counts.add(c, word.getKey(), word.getValue());
+                }
+            }
+        } catch (OptionalDataException e) {
+            // WordCounts written as primitive data
+            counts = WordCounts.read(is);
+        }
+        is.close();
+        ScoringModel model = ScoringModel.build(prior, counts);
+        ModelFile.write(fs.create(new Path(args[1])), classes, testFile,
+            docsTotalNum, 0, counts, model);
+    }
+}
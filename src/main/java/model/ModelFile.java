@@ -0,0 +1,482 @@
+package model;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * versioned binary model file.
+ * <pre>
+ * header:     int MAGIC, int VERSION, int docsTotalNum, int modelVersion
+ * split:      train and test documents of each class
+ * classes:    int classNum, (utf name, double logPrior, double unseen)*
+ * vocabulary: int size, int slotNum, long poolSize,
+ *             int offsets[size + 1], int slots[slotNum], byte pool[poolSize]
+ *             or int buckets, int 0, long 0 for a hashed vocabulary
+ * logProb:    long length, double logProb[length]
+ * counts:     int classNum, (utf name, int length, int counts[length])*
+ * footer:     long offset of each section above, int VERSION, int MAGIC
+ * </pre>
+ * all numbers are big endian and the vocabulary and logProb sections are
+ * 8 byte aligned. a reader checks the footer and seeks to a section with
+ * it. a scoring model is kept off the java heap by default, then the
+ * vocabulary and logProb sections are used in place from the mapped file,
+ * so opening a large model only maps it and its pages are read on first
+ * use. on a file system other than the local one they are copied to
+ * direct buffers with positional reads. an on-heap model reads the arrays
+ * in bulk and uses the hash table of the vocabulary as written.
+ */
+public class ModelFile {
+    public static final int MAGIC = 0x4E424D46;
+    public static final int VERSION = 1;
+    // read scoring models off the java heap, true by default
+    public static final String OFF_HEAP = "naivebayes.model.offheap";
+    static final int SECTIONS = 5;
+    static final int FOOTER_SIZE = SECTIONS * 8 + 8;
+    // bytes read from the file at once for the primitive arrays
+    private static final int CHUNK = 64 * 1024 * 1024;
+
+    private ModelFile() {
+    }
+
+    /**
+     * write a model file
+     *
+     * @param output       output stream, closed at the end, also when
+     *                     writing fails
+     * @param classes      train documents of each class
+     * @param testFile     test documents of each class
+     * @param docsTotalNum total document number for train
+     * @param modelVersion version of the model, increased by each
+     *                     incremental training
+     * @param counts       word counts of all classes
+     * @param model        scoring model built from the counts
+     * @throws IOException exception from output
+     */
+    public static void write(OutputStream output,
+                             Map<String, ArrayList<String>> classes,
+                             Map<String, ArrayList<String>> testFile,
+                             int docsTotalNum, int modelVersion,
+                             WordCounts counts, ScoringModel model)
+        throws IOException {
+        PositionOutputStream position = new PositionOutputStream(
+            new BufferedOutputStream(output, 1 << 16));
+        try (DataOutputStream out = new DataOutputStream(position)) {
+            long[] sections = new long[SECTIONS];
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(docsTotalNum);
+            out.writeInt(modelVersion);
+            // split
+            sections[0] = position.position;
+            out.writeInt(classes.size());
+            for (Map.Entry<String, ArrayList<String>> entry : classes.entrySet()) {
+                out.writeUTF(entry.getKey());
+                writeNames(out, entry.getValue());
+                writeNames(out, testFile.get(entry.getKey()));
+            }
+            // classes
+            sections[1] = position.position;
+            String[] classNames = model.getClassNames();
+            out.writeInt(classNames.length);
+            for (int c = 0; c < classNames.length; c++) {
+                out.writeUTF(classNames[c]);
+                out.writeDouble(model.logPrior(c));
+                out.writeDouble(model.unseen()[c]);
+            }
+            // vocabulary
+            align(out, position);
+            sections[2] = position.position;
+            Vocabulary vocabulary = counts.getVocabulary();
+            if (vocabulary.isHashed()) {
+                // no word is kept, a table has at least 16 slots otherwise
+                out.writeInt(vocabulary.size());
+                out.writeInt(0);
+                out.writeLong(0);
+            } else {
+                int[] slots = vocabulary.slots();
+                out.writeInt(vocabulary.size());
+                out.writeInt(slots.length);
+                out.writeLong(vocabulary.poolSize());
+                int[] offsets = vocabulary.offsets();
+                for (int i = 0; i <= vocabulary.size(); i++) {
+                    out.writeInt(offsets[i]);
+                }
+                for (int slot : slots) {
+                    out.writeInt(slot);
+                }
+                out.write(vocabulary.pool(), 0, vocabulary.poolSize());
+            }
+            // logProb
+            align(out, position);
+            sections[3] = position.position;
+            long tableLength = model.length();
+            out.writeLong(tableLength);
+            for (long i = 0; i < tableLength; i++) {
+                out.writeDouble(model.logProb(i));
+            }
+            // counts
+            sections[4] = position.position;
+            out.writeInt(counts.classNum());
+            for (int c = 0; c < counts.classNum(); c++) {
+                out.writeUTF(counts.getClassNames()[c]);
+                int[] wordsNum = counts.counts(c);
+                int length = Math.min(wordsNum.length, counts.getVocabulary().size());
+                out.writeInt(length);
+                for (int i = 0; i < length; i++) {
+                    out.writeInt(wordsNum[i]);
+                }
+            }
+            for (long section : sections) {
+                out.writeLong(section);
+            }
+            out.writeInt(VERSION);
+            out.writeInt(MAGIC);
+        }
+    }
+
+    private static void writeNames(DataOutputStream out, ArrayList<String> names)
+        throws IOException {
+        if (names == null) {
+            out.writeInt(0);
+            return;
+        }
+        out.writeInt(names.size());
+        for (String name : names) {
+            out.writeUTF(name);
+        }
+    }
+
+    private static void align(DataOutputStream out, PositionOutputStream position)
+        throws IOException {
+        while (position.position % 8 != 0) {
+            out.writeByte(0);
+        }
+    }
+
+    /**
+     * @param conf config for a file system
+     * @param path path of the model file
+     * @return reader of the model file
+     * @throws IOException if the file is not a model file
+     */
+    public static Reader open(Configuration conf, Path path) throws IOException {
+        return new Reader(conf, path);
+    }
+
+    /**
+     * reader of a model file, each section is read on demand
+     */
+    public static class Reader implements Closeable {
+        private final FSDataInputStream in;
+        // channel of the file when it is on the local file system
+        private final FileChannel channel;
+        private final int docsTotalNum;
+        private final int modelVersion;
+        private final long[] sections = new long[SECTIONS];
+
+        Reader(Configuration conf, Path path) throws IOException {
+            FileSystem fs = path.getFileSystem(conf);
+            long length = fs.getFileStatus(path).getLen();
+            this.in = fs.open(path);
+            try {
+                this.channel = fs instanceof LocalFileSystem ? new RandomAccessFile(
+                    ((LocalFileSystem) fs).pathToFile(path), "r").getChannel() : null;
+            } catch (IOException | RuntimeException e) {
+                this.in.close();
+                throw e;
+            }
+            if (length < 16 + FOOTER_SIZE || this.in.readInt() != MAGIC) {
+                close();
+                throw new IOException(path + " is not a model file");
+            }
+            int version = this.in.readInt();
+            if (version != VERSION) {
+                close();
+                throw new IOException("unsupported model version " + version
+                    + " in " + path);
+            }
+            this.docsTotalNum = this.in.readInt();
+            this.modelVersion = this.in.readInt();
+            this.in.seek(length - FOOTER_SIZE);
+            /* a file which is still written or was cut has no valid footer */
+            long last = 16;
+            boolean valid = true;
+            for (int i = 0; i < SECTIONS; i++) {
+                this.sections[i] = this.in.readLong();
+                valid &= this.sections[i] >= last && this.sections[i] <= length - FOOTER_SIZE;
+                last = this.sections[i];
+            }
+            if (!valid || this.in.readInt() != VERSION || this.in.readInt() != MAGIC) {
+                close();
+                throw new IOException(path + " is truncated or not a complete model file");
+            }
+        }
+
+        public int getDocsTotalNum() {
+            return this.docsTotalNum;
+        }
+
+        public int getModelVersion() {
+            return this.modelVersion;
+        }
+
+        /**
+         * read the train and test documents of each class
+         *
+         * @param classes  train documents of each class, filled by this method
+         * @param testFile test documents of each class, filled by this method
+         * @throws IOException exception from the file
+         */
+        public void readSplit(Map<String, ArrayList<String>> classes,
+                              Map<String, ArrayList<String>> testFile)
+            throws IOException {
+            DataInputStream data = stream(this.sections[0]);
+            int classNum = data.readInt();
+            for (int i = 0; i < classNum; i++) {
+                String className = data.readUTF();
+                classes.put(className, readNames(data));
+                testFile.put(className, readNames(data));
+            }
+        }
+
+        /**
+         * @return log prior probability of each class
+         * @throws IOException exception from the file
+         */
+        public Map<String, Double> readPrior() throws IOException {
+            DataInputStream data = stream(this.sections[1]);
+            int classNum = data.readInt();
+            Map<String, Double> prior = new HashMap<>();
+            for (int c = 0; c < classNum; c++) {
+                prior.put(data.readUTF(), data.readDouble());
+                data.readDouble();
+            }
+            return prior;
+        }
+
+        /**
+         * @return the vocabulary
+         * @throws IOException exception from the file
+         */
+        public Vocabulary readVocabulary() throws IOException {
+            long offset = this.sections[2];
+            ByteBuffer header = map(offset, 16);
+            int size = header.getInt();
+            int slotNum = header.getInt();
+            long poolSize = header.getLong();
+            if (slotNum == 0) {
+                return Vocabulary.hashed(size);
+            }
+            offset += 16;
+            int[] offsets = readInts(offset, size + 1);
+            offset += 4L * (size + 1);
+            int[] slots = readInts(offset, slotNum);
+            offset += 4L * slotNum;
+            byte[] pool = new byte[(int) poolSize];
+            for (int done = 0; done < pool.length; ) {
+                int n = Math.min(CHUNK, pool.length - done);
+                map(offset + done, n).get(pool, done, n);
+                done += n;
+            }
+            return Vocabulary.fromTable(pool, offsets, slots, size);
+        }
+
+        /**
+         * @return the scoring model, off the java heap
+         * @throws IOException exception from the file
+         */
+        public ScoringModel readScoringModel() throws IOException {
+            return readScoringModel(true);
+        }
+
+        /**
+         * @param offHeap keep the vocabulary and the logProb table off the
+         *                java heap, they stay valid after close. a table of
+         *                more than ScoringModel.MAX_TABLE entries is always
+         *                kept off the heap
+         * @return the scoring model
+         * @throws IOException exception from the file
+         */
+        public ScoringModel readScoringModel(boolean offHeap) throws IOException {
+            DataInputStream data = stream(this.sections[1]);
+            int classNum = data.readInt();
+            String[] classNames = new String[classNum];
+            double[] logPrior = new double[classNum];
+            double[] unseen = new double[classNum];
+            for (int c = 0; c < classNum; c++) {
+                classNames[c] = data.readUTF();
+                logPrior[c] = data.readDouble();
+                unseen[c] = data.readDouble();
+            }
+            long length = map(this.sections[3], 8).getLong();
+            /* a table too large for a java array is always kept off the heap */
+            if (offHeap || length > ScoringModel.MAX_TABLE) {
+                return new OffHeapScoringModel(classNames, logPrior,
+                    readOffHeapVocabulary(), offHeap(this.sections[3] + 8, 8 * length),
+                    length, unseen);
+            }
+            Vocabulary vocabulary = readVocabulary();
+            double[] logProb = readDoubles(this.sections[3] + 8, (int) length);
+            return new HeapScoringModel(classNames, logPrior, vocabulary, logProb, unseen);
+        }
+
+        private WordIndex readOffHeapVocabulary() throws IOException {
+            long offset = this.sections[2];
+            ByteBuffer header = map(offset, 16);
+            int size = header.getInt();
+            int slotNum = header.getInt();
+            long poolSize = header.getLong();
+            if (slotNum == 0) {
+                return Vocabulary.hashed(size);
+            }
+            offset += 16;
+            OffHeapArray offsets = offHeap(offset, 4L * (size + 1));
+            offset += 4L * (size + 1);
+            OffHeapArray slots = offHeap(offset, 4L * slotNum);
+            offset += 4L * slotNum;
+            return new OffHeapVocabulary(size, slotNum, offsets, slots,
+                offHeap(offset, poolSize));
+        }
+
+        /**
+         * @param vocabulary the vocabulary of the model
+         * @return word counts of all classes
+         * @throws IOException exception from the file
+         */
+        public WordCounts readCounts(Vocabulary vocabulary) throws IOException {
+            WordCounts counts = new WordCounts(vocabulary);
+            this.in.seek(this.sections[4]);
+            int classNum = this.in.readInt();
+            for (int i = 0; i < classNum; i++) {
+                String className = this.in.readUTF();
+                int length = this.in.readInt();
+                long offset = this.in.getPos();
+                counts.setCounts(counts.addClass(className), readInts(offset, length));
+                this.in.seek(offset + 4L * length);
+            }
+            return counts;
+        }
+
+        private static ArrayList<String> readNames(DataInputStream data)
+            throws IOException {
+            int num = data.readInt();
+            ArrayList<String> names = new ArrayList<>(num);
+            for (int i = 0; i < num; i++) {
+                names.add(data.readUTF());
+            }
+            return names;
+        }
+
+        private DataInputStream stream(long offset) throws IOException {
+            this.in.seek(offset);
+            return new DataInputStream(new BufferedInputStream(this.in, 1 << 16));
+        }
+
+        private int[] readInts(long offset, int length) throws IOException {
+            int[] array = new int[length];
+            int step = CHUNK / 4;
+            for (int done = 0; done < length; done += step) {
+                int n = Math.min(step, length - done);
+                map(offset + 4L * done, n * 4).asIntBuffer().get(array, done, n);
+            }
+            return array;
+        }
+
+        private double[] readDoubles(long offset, int length) throws IOException {
+            double[] array = new double[length];
+            int step = CHUNK / 8;
+            for (int done = 0; done < length; done += step) {
+                int n = Math.min(step, length - done);
+                map(offset + 8L * done, n * 8).asDoubleBuffer().get(array, done, n);
+            }
+            return array;
+        }
+
+        /**
+         * @return length bytes of the file at offset off the java heap,
+         * memory mapped for a local file, copied to direct buffers otherwise
+         */
+        private OffHeapArray offHeap(long offset, long length) throws IOException {
+            int chunkSize = 1 << OffHeapArray.CHUNK_SHIFT;
+            ByteBuffer[] chunks = new ByteBuffer[(int) ((length + chunkSize - 1) / chunkSize)];
+            for (int i = 0; i < chunks.length; i++) {
+                long start = offset + (long) i * chunkSize;
+                int n = (int) Math.min(chunkSize, length - (long) i * chunkSize);
+                if (this.channel != null) {
+                    chunks[i] = this.channel.map(FileChannel.MapMode.READ_ONLY, start, n);
+                    continue;
+                }
+                chunks[i] = ByteBuffer.allocateDirect(n);
+                byte[] buffer = new byte[Math.min(n, 1 << 16)];
+                for (int done = 0; done < n; ) {
+                    int step = Math.min(buffer.length, n - done);
+                    this.in.readFully(start + done, buffer, 0, step);
+                    chunks[i].put(buffer, 0, step);
+                    done += step;
+                }
+            }
+            return new OffHeapArray(chunks);
+        }
+
+        /**
+         * @return a buffer holding length bytes of the file at offset,
+         * memory mapped for a local file
+         */
+        ByteBuffer map(long offset, int length) throws IOException {
+            if (this.channel != null) {
+                return this.channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+            }
+            byte[] bytes = new byte[length];
+            this.in.readFully(offset, bytes);
+            return ByteBuffer.wrap(bytes);
+        }
+
+        public void close() throws IOException {
+            if (this.channel != null) {
+                this.channel.close();
+            }
+            this.in.close();
+        }
+    }
+
+    /**
+     * output stream which tracks the number of bytes written
+     */
+    private static class PositionOutputStream extends FilterOutputStream {
+        long position;
+
+        PositionOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.out.write(b);
+            this.position++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.out.write(b, off, len);
+            this.position += len;
+        }
+    }
+}
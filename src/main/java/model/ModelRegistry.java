@@ -0,0 +1,277 @@
+package model;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.log4j.Logger;
+import wordcount.ByteTokenizer;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * registry of loaded scoring models, keyed by the path of the model file.
+ * at most CAPACITY models are kept, the least recently used one is evicted.
+ * a background thread checks the modification time of the cached files
+ * and reloads a changed file into a new model, which replaces the old one
+ * by a single volatile write. a model is only published after it is fully
+ * read, so classify never waits for a load and never sees a partial model.
+ */
+public class ModelRegistry implements Closeable {
+    private static final Logger logger = Logger.getLogger(ModelRegistry.class);
+    // maximum number of loaded models
+    public static final String CAPACITY = "naivebayes.registry.capacity";
+    // interval in milliseconds between checks for changed files, 0 disables reload
+    public static final String RELOAD_INTERVAL_MS = "naivebayes.registry.reload.interval.ms";
+    // prefix of the versioned model files under an output directory
+    public static final String VERSION_PREFIX = "Classifier.v";
+
+    private final Configuration conf;
+    private final int capacity;
+    // path -> model being loaded or loaded, in access order
+    private final LinkedHashMap<Path, CompletableFuture<LoadedModel>> models;
+    private final ScheduledExecutorService reloader;
+
+    /**
+     * @param conf config of the file system, CAPACITY and RELOAD_INTERVAL_MS
+     */
+    public ModelRegistry(Configuration conf) {
+        this.conf = conf;
+        this.capacity = Math.max(1, conf.getInt(CAPACITY, 16));
+        this.models = new LinkedHashMap<>(16, 0.75f, true);
+        long interval = conf.getLong(RELOAD_INTERVAL_MS, 10000);
+        if (interval > 0) {
+            this.reloader = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "model-reloader");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.reloader.scheduleWithFixedDelay(this::reloadChanged,
+                interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            this.reloader = null;
+        }
+    }
+
+    /**
+     * @param dir     output directory of a classifier
+     * @param version version of the classifier
+     * @return the loaded model of the version
+     * @throws IOException exception from ModelFile.Reader
+     */
+    public LoadedModel get(Path dir, int version) throws IOException {
+        return get(new Path(dir, VERSION_PREFIX + version));
+    }
+
+    /**
+     * get a model, the file is loaded by the first caller and the other
+     * callers of the same path wait for that load
+     *
+     * @param path model file
+     * @return the loaded model
+     * @throws IOException exception from ModelFile.Reader
+     */
+    public LoadedModel get(Path path) throws IOException {
+        Path key = path.getFileSystem(this.conf).makeQualified(path);
+        CompletableFuture<LoadedModel> future;
+        boolean load = false;
+        synchronized (this.models) {
+            future = this.models.get(key);
+            if (future == null) {
+                future = new CompletableFuture<>();
+                this.models.put(key, future);
+                load = true;
+                evict();
+            }
+        }
+        if (load) {
+            try {
+                future.complete(new LoadedModel(key, this.conf));
+            } catch (IOException | RuntimeException e) {
+                synchronized (this.models) {
+                    this.models.remove(key, future);
+                }
+                future.completeExceptionally(e);
+            }
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while loading " + key, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("can not load " + key, e.getCause());
+        }
+    }
+
+    /**
+     * @return the number of models in the registry
+     */
+    public int size() {
+        synchronized (this.models) {
+            return this.models.size();
+        }
+    }
+
+    private void evict() {
+        while (this.models.size() > this.capacity) {
+            Path eldest = this.models.keySet().iterator().next();
+            this.models.remove(eldest);
+            logger.info("evict model " + eldest);
+        }
+    }
+
+    /**
+     * check all loaded models and reload the changed ones
+     */
+    public void reloadChanged() {
+        List<CompletableFuture<LoadedModel>> loaded;
+        synchronized (this.models) {
+            loaded = new ArrayList<>(this.models.values());
+        }
+        for (CompletableFuture<LoadedModel> future : loaded) {
+            if (!future.isDone() || future.isCompletedExceptionally()) {
+                continue;
+            }
+            LoadedModel model = future.join();
+            try {
+                model.reloadIfChanged(this.conf);
+            } catch (IOException | RuntimeException e) {
+                // keep serving the current model, the next check tries again
+                logger.warn("can not reload " + model.getPath(), e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (this.reloader != null) {
+            this.reloader.shutdownNow();
+        }
+        synchronized (this.models) {
+            this.models.clear();
+        }
+    }
+
+    /**
+     * a model file and the scoring model currently loaded from it.
+     * a model evicted from the registry stays usable but is not reloaded.
+     */
+    public static class LoadedModel implements Supplier<ScoringModel> {
+        private final Path path;
+        // the current model and the state of the file it was read from
+        private volatile Snapshot snapshot;
+        private volatile long reloads;
+
+        LoadedModel(Path path, Configuration conf) throws IOException {
+            this.path = path;
+            this.snapshot = read(path, conf,
+                path.getFileSystem(conf).getFileStatus(path));
+        }
+
+        private static Snapshot read(Path path, Configuration conf, FileStatus status)
+            throws IOException {
+            try (ModelFile.Reader reader = ModelFile.open(conf, path)) {
+                return new Snapshot(
+                    reader.readScoringModel(conf.getBoolean(ModelFile.OFF_HEAP, true)),
+                    reader.getModelVersion(),
+                    status.getModificationTime(), status.getLen());
+            }
+        }
+
+        /**
+         * @param conf config of the file system
+         * @return true if the file changed and was reloaded
+         * @throws IOException exception from ModelFile.Reader
+         */
+        boolean reloadIfChanged(Configuration conf) throws IOException {
+            FileSystem fs = this.path.getFileSystem(conf);
+            FileStatus status;
+            try {
+                status = fs.getFileStatus(this.path);
+            } catch (FileNotFoundException e) {
+                // between the delete and the rename of a republish
+                return false;
+            }
+            Snapshot current = this.snapshot;
+            if (status.getModificationTime() == current.modificationTime
+                && status.getLen() == current.length) {
+                return false;
+            }
+            this.snapshot = read(this.path, conf, status);
+            this.reloads++;
+            logger.info("reloaded " + this.path + " version " + this.snapshot.modelVersion);
+            return true;
+        }
+
+        /**
+         * @return the current scoring model, callers which score many
+         * documents at once should get it once for all of them
+         */
+        @Override
+        public ScoringModel get() {
+            return this.snapshot.model;
+        }
+
+        /**
+         * @return modelVersion of the current model file
+         */
+        public int getModelVersion() {
+            return this.snapshot.modelVersion;
+        }
+
+        public Path getPath() {
+            return this.path;
+        }
+
+        /**
+         * @return the number of reloads since the first load
+         */
+        public long getReloads() {
+            return this.reloads;
+        }
+
+        /**
+         * @param bytes buffer holding the document as utf-8 bytes
+         * @param off   start of the document
+         * @param len   length of the document
+         * @return class of the document by the current model
+         */
+        public String classify(byte[] bytes, int off, int len) {
+            ScoringModel model = this.snapshot.model;
+            TermVector vector = new TermVector();
+            model.vectorize(bytes, off, len, new ByteTokenizer(), vector);
+            double[] scores = model.newScores();
+            model.addVector(vector, scores);
+            return model.best(scores);
+        }
+    }
+
+    private static class Snapshot {
+        final ScoringModel model;
+        final int modelVersion;
+        final long modificationTime;
+        final long length;
+
+        Snapshot(ScoringModel model, int modelVersion, long modificationTime, long length) {
+            this.model = model;
+            this.modelVersion = modelVersion;
+            this.modificationTime = modificationTime;
+            this.length = length;
+        }
+    }
+}
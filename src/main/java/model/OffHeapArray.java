@@ -0,0 +1,50 @@
+package model;
+
+import java.nio.ByteBuffer;
+
+/**
+ * read only primitive array outside of the java heap.
+ * the bytes are held by memory mapped or direct buffers of at most
+ * 2^CHUNK_SHIFT bytes each, so an array may be larger than a single
+ * ByteBuffer. the array starts at a chunk boundary and an element never
+ * spans two chunks.
+ */
+final class OffHeapArray {
+    static final int CHUNK_SHIFT = 30;
+    private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+    private final ByteBuffer[] chunks;
+
+    /**
+     * @param chunks buffers of the array, all but the last of
+     *               2^CHUNK_SHIFT bytes, in big endian order
+     */
+    OffHeapArray(ByteBuffer[] chunks) {
+        this.chunks = chunks;
+    }
+
+    /**
+     * @param index byte index
+     * @return the byte at index
+     */
+    byte getByte(long index) {
+        return this.chunks[(int) (index >>> CHUNK_SHIFT)].get((int) (index & CHUNK_MASK));
+    }
+
+    /**
+     * @param index int index
+     * @return the int at index
+     */
+    int getInt(long index) {
+        long at = index << 2;
+        return this.chunks[(int) (at >>> CHUNK_SHIFT)].getInt((int) (at & CHUNK_MASK));
+    }
+
+    /**
+     * @param index double index
+     * @return the double at index
+     */
+    double getDouble(long index) {
+        long at = index << 3;
+        return this.chunks[(int) (at >>> CHUNK_SHIFT)].getDouble((int) (at & CHUNK_MASK));
+    }
+}
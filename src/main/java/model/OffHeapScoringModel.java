@@ -0,0 +1,107 @@
+package model;
+
+/**
+ * scoring model whose logProb table stays off the java heap, in the
+ * mapped model file or in direct buffers. only the class names, priors
+ * and unseen probabilities are on the heap, so the heap and the gc pauses
+ * do not grow with the vocabulary. scoring reads the table in place and
+ * allocates nothing.
+ */
+class OffHeapScoringModel extends ScoringModel {
+    private final int classNum;
+    // double[word id * classNum + class index]: log probability of a word
+    private final OffHeapArray logProb;
+    private final long length;
+
+    OffHeapScoringModel(String[] classNames, double[] logPrior, WordIndex vocabulary,
+                        OffHeapArray logProb, long length, double[] unseen) {
+        super(classNames, logPrior, vocabulary, unseen);
+        this.classNum = classNames.length;
+        this.logProb = logProb;
+        this.length = length;
+    }
+
+    @Override
+    public void addVector(TermVector vector, double[] scores) {
+        int classNum = this.classNum;
+        vector.sort();
+        addUnseen(vector, scores);
+        OffHeapArray logProb = this.logProb;
+        for (int i = 0; i < vector.size(); i++) {
+            long base = (long) vector.id(i) * classNum;
+            int tf = vector.tf(i);
+            for (int c = 0; c < classNum; c++) {
+                scores[c] += tf * logProb.getDouble(base + c);
+            }
+        }
+    }
+
+    @Override
+    public void scoreBatch(TermVector[] vectors, int num, double[][] scores) {
+        int classNum = this.classNum;
+        int[] cursor = cursor(num);
+        for (int d = 0; d < num; d++) {
+            vectors[d].sort();
+            System.arraycopy(this.logPrior, 0, scores[d], 0, classNum);
+            addUnseen(vectors[d], scores[d]);
+        }
+        OffHeapArray logProb = this.logProb;
+        int blockWords = Math.max(1, BLOCK_BYTES / 8 / classNum);
+        long vocabularySize = this.length / classNum;
+        for (long end = blockWords; end - blockWords < vocabularySize; end += blockWords) {
+            for (int d = 0; d < num; d++) {
+                TermVector vector = vectors[d];
+                double[] docScores = scores[d];
+                int i = cursor[d];
+                for (; i < vector.size() && vector.id(i) < end; i++) {
+                    long base = (long) vector.id(i) * classNum;
+                    int tf = vector.tf(i);
+                    for (int c = 0; c < classNum; c++) {
+                        docScores[c] += tf * logProb.getDouble(base + c);
+                    }
+                }
+                cursor[d] = i;
+            }
+        }
+    }
+
+    @Override
+    public void addWordId(int wordId, double[] scores) {
+        if (wordId < 0) {
+            for (int c = 0; c < this.classNum; c++) {
+                scores[c] += this.unseen[c];
+            }
+        } else {
+            long base = (long) wordId * this.classNum;
+            for (int c = 0; c < this.classNum; c++) {
+                scores[c] += this.logProb.getDouble(base + c);
+            }
+        }
+    }
+
+    @Override
+    void addWordId(int wordId, int tf, int[] classes, int classesNum, double[] scores) {
+        OffHeapArray logProb = this.logProb;
+        long base = (long) wordId * this.classNum;
+        if (classesNum == this.classNum) {
+            for (int c = 0; c < classesNum; c++) {
+                scores[c] += tf * logProb.getDouble(base + c);
+            }
+            return;
+        }
+        for (int i = 0; i < classesNum; i++) {
+            int c = classes[i];
+            scores[c] += tf * logProb.getDouble(base + c);
+        }
+    }
+
+    @Override
+    double logProb(long index) {
+        return this.logProb.getDouble(index);
+    }
+
+    @Override
+    long length() {
+        return this.length;
+    }
+}
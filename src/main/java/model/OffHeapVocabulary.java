@@ -0,0 +1,85 @@
+package model;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * read only vocabulary over the vocabulary section of a model file held
+ * off the java heap. the offsets, the open addressing table and the byte
+ * pool are used as written, a lookup hashes the word and compares it with
+ * the pool in place, so it allocates nothing.
+ * the word offsets are ints in the model file, so the pool holds at most
+ * 2 GB of words, the logProb table which makes up most of a large model
+ * has no such limit.
+ */
+class OffHeapVocabulary implements WordIndex {
+    private static final int EMPTY = -1;
+    private final int size;
+    private final int mask;
+    // word id -> start offset in pool, offsets[size] is the end of pool
+    private final OffHeapArray offsets;
+    // open addressing table: slot -> word id
+    private final OffHeapArray slots;
+    private final OffHeapArray pool;
+
+    /**
+     * @param size    the number of words
+     * @param slotNum the number of slots, a power of two
+     * @param offsets start offset of each word in pool
+     * @param slots   word id of each slot
+     * @param pool    utf-8 bytes of all words
+     */
+    OffHeapVocabulary(int size, int slotNum, OffHeapArray offsets,
+                      OffHeapArray slots, OffHeapArray pool) {
+        this.size = size;
+        this.mask = slotNum - 1;
+        this.offsets = offsets;
+        this.slots = slots;
+        this.pool = pool;
+    }
+
+    @Override
+    public boolean isHashed() {
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public int get(byte[] bytes, int off, int len) {
+        int slot = Vocabulary.hash(bytes, off, len) & this.mask;
+        int id;
+        while ((id = this.slots.getInt(slot)) != EMPTY) {
+            if (equalsAt(id, bytes, off, len)) {
+                return id;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        return -1;
+    }
+
+    @Override
+    public String word(int id) {
+        int start = this.offsets.getInt(id);
+        byte[] bytes = new byte[this.offsets.getInt(id + 1) - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = this.pool.getByte(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private boolean equalsAt(int id, byte[] bytes, int off, int len) {
+        int start = this.offsets.getInt(id);
+        if (this.offsets.getInt(id + 1) - start != len) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (this.pool.getByte(start + i) != bytes[off + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
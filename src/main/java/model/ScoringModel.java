@@ -0,0 +1,410 @@
+package model;
+
+import wordcount.ByteTokenizer;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * frozen scoring model built at the end of training.
+ * all logarithms are computed once here, so scoring a token is a single
+ * vocabulary lookup followed by an add loop over the classes.
+ * a document may also be scored as a sparse term frequency vector, then
+ * each distinct word is looked up once, and a batch of vectors is scored
+ * block by block of the logProb table.
+ * the model is read only, the logProb table is kept by a backend, on the
+ * java heap (HeapScoringModel) or off it (OffHeapScoringModel).
+ */
+public abstract class ScoringModel {
+    // bytes of the logProb table scored for all documents of a batch at once
+    static final int BLOCK_BYTES = 256 * 1024;
+    // the maximum number of entries of a logProb table on the java heap
+    static final int MAX_TABLE = Integer.MAX_VALUE - 8;
+    // distinct words added between two prunings of the top k candidates,
+    // doubled up to MAX_PRUNE_INTERVAL after each pruning which drops nothing
+    private static final int PRUNE_INTERVAL = 8;
+    private static final int MAX_PRUNE_INTERVAL = 64;
+    // relative slack of the pruning threshold against rounding of the scores
+    private static final double PRUNE_SLACK = 1e-9;
+
+    // class names, the index of a class is used in every score array
+    private final String[] classNames;
+    // log prior probability by class index
+    final double[] logPrior;
+    private final WordIndex vocabulary;
+    // log probability of a word which was never seen in a class
+    final double[] unseen;
+    // the maximum log probability of any word of each class, made on first use
+    private volatile double[] maxLogProb;
+    // position of each document of a batch in scoreBatch, kept per thread
+    private final ThreadLocal<int[]> cursors = ThreadLocal.withInitial(() -> new int[0]);
+
+    ScoringModel(String[] classNames, double[] logPrior,
+                 WordIndex vocabulary, double[] unseen) {
+        this.classNames = classNames;
+        this.logPrior = logPrior;
+        this.vocabulary = vocabulary;
+        this.unseen = unseen;
+    }
+
+    /**
+     * build the scoring model from the trained counts
+     *
+     * @param prior  log prior probability of each class
+     * @param counts word counts of all classes
+     * @return frozen scoring model
+     */
+    public static ScoringModel build(Map<String, Double> prior, WordCounts counts) {
+        int classNum = prior.size();
+        String[] classNames = new String[classNum];
+        double[] logPrior = new double[classNum];
+        double[] unseen = new double[classNum];
+        int i = 0;
+        for (Map.Entry<String, Double> entry : prior.entrySet()) {
+            classNames[i] = entry.getKey();
+            logPrior[i] = entry.getValue();
+            i++;
+        }
+        /*
+         *  the denominator of a class is the number of all words in the
+         *  class plus the size of its vocabulary (laplace smoothing).
+         *  a class without any word does not contribute to the score.
+         */
+        int[] countIndex = new int[classNum];
+        double[] logDenominator = new double[classNum];
+        for (int c = 0; c < classNum; c++) {
+            countIndex[c] = counts.classIndex(classNames[c]);
+            if (countIndex[c] >= 0) {
+                logDenominator[c] = Math.log(counts.totalWordsNum(countIndex[c])
+                    + counts.distinctWordsNum(countIndex[c]));
+                unseen[c] = -logDenominator[c];
+            }
+        }
+        int vocabularySize = counts.getVocabulary().size();
+        long tableSize = (long) vocabularySize * classNum;
+        if (tableSize > MAX_TABLE) {
+            throw new IllegalArgumentException("logProb table of " + vocabularySize
+                + " words and " + classNum + " classes has " + tableSize
+                + " entries, more than " + MAX_TABLE + " can be kept on the java heap");
+        }
+        double[] logProb = new double[(int) tableSize];
+        for (int w = 0; w < vocabularySize; w++) {
+            System.arraycopy(unseen, 0, logProb, w * classNum, classNum);
+        }
+        for (int c = 0; c < classNum; c++) {
+            if (countIndex[c] < 0) {
+                continue;
+            }
+            int[] wordsNum = counts.counts(countIndex[c]);
+            int length = Math.min(wordsNum.length, vocabularySize);
+            for (int w = 0; w < length; w++) {
+                if (wordsNum[w] != 0) {
+                    logProb[w * classNum + c] =
+                        Math.log(wordsNum[w] + 1) - logDenominator[c];
+                }
+            }
+        }
+        return new HeapScoringModel(classNames, logPrior,
+            counts.getVocabulary(), logProb, unseen);
+    }
+
+    /**
+     * @return a new score array initialized with the log prior
+     */
+    public double[] newScores() {
+        return this.logPrior.clone();
+    }
+
+    /**
+     * add the log probability of a word to the scores of all classes
+     *
+     * @param word   the word
+     * @param scores scores from newScores
+     */
+    public void addWord(String word, double[] scores) {
+        addWordId(this.vocabulary.get(word), scores);
+    }
+
+    /**
+     * add the log probability of a word given as utf-8 bytes
+     *
+     * @param bytes  buffer holding the word
+     * @param off    start of the word
+     * @param len    length of the word
+     * @param scores scores from newScores
+     */
+    public void addWord(byte[] bytes, int off, int len, double[] scores) {
+        addWordId(this.vocabulary.get(bytes, off, len), scores);
+    }
+
+    /**
+     * score a whole document given as utf-8 bytes
+     *
+     * @param bytes     buffer holding the document
+     * @param off       start of the document
+     * @param len       length of the document
+     * @param tokenizer tokenizer to reuse
+     * @return scores of all classes
+     */
+    public double[] score(byte[] bytes, int off, int len, ByteTokenizer tokenizer) {
+        double[] scores = newScores();
+        tokenizer.reset(bytes, off, len);
+        while (tokenizer.next()) {
+            addWord(tokenizer.bytes(), tokenizer.start(), tokenizer.length(), scores);
+        }
+        return scores;
+    }
+
+    /**
+     * add the words of a document to a term vector
+     *
+     * @param bytes     buffer holding the document
+     * @param off       start of the document
+     * @param len       length of the document
+     * @param tokenizer tokenizer to reuse
+     * @param vector    term vector to add to
+     */
+    public void vectorize(byte[] bytes, int off, int len, ByteTokenizer tokenizer,
+                          TermVector vector) {
+        WordIndex vocabulary = this.vocabulary;
+        tokenizer.reset(bytes, off, len);
+        while (tokenizer.next()) {
+            vector.add(vocabulary.get(tokenizer.bytes(), tokenizer.start(),
+                tokenizer.length()));
+        }
+    }
+
+    /**
+     * add a term vector to the scores, each distinct word adds its log
+     * probability multiplied by its term frequency. the words are sorted
+     * first, so the rows of logProb are read in address order.
+     *
+     * @param vector term vector of a document, sorted by this method
+     * @param scores scores from newScores
+     */
+    public abstract void addVector(TermVector vector, double[] scores);
+
+    /**
+     * score a batch of term vectors.
+     * the vectors are sorted by word id and the logProb table is walked in
+     * blocks of BLOCK_BYTES, all vectors add their words of a block before
+     * the next block is read, so the rows of a block stay in cache.
+     *
+     * @param vectors term vectors of the documents, sorted by this method
+     * @param num     the number of vectors to score
+     * @param scores  scores of each document, filled by this method
+     */
+    public abstract void scoreBatch(TermVector[] vectors, int num, double[][] scores);
+
+    /**
+     * @param num the number of documents of a batch
+     * @return position of each document, all 0, reused by the thread
+     */
+    int[] cursor(int num) {
+        int[] cursor = this.cursors.get();
+        if (cursor.length < num) {
+            cursor = new int[num];
+            this.cursors.set(cursor);
+        } else {
+            Arrays.fill(cursor, 0, num, 0);
+        }
+        return cursor;
+    }
+
+    /**
+     * the k best classes of a term vector with their log posterior, which
+     * is the score minus the log of the sum of exp of all scores.
+     * with prune, the words are added only to the scores of the candidate
+     * classes, and every few words a class is dropped when its
+     * score plus the remaining tokens times its maximum log probability is
+     * below the k-th best score plus the remaining tokens times the unseen
+     * log probability, the least a class can get. the k best classes and
+     * their scores are the same as without prune. a dropped class enters
+     * the normalization with the upper bound of its score at the time it
+     * was dropped, so the evidence is an upper bound of the exact one and
+     * the log posteriors are lower bounds of the exact ones, equal to them
+     * when no class is dropped.
+     *
+     * @param vector term vector of a document, sorted by this method
+     * @param k      the number of classes
+     * @param prune  drop classes which can not reach the k best
+     * @return the min(k, classNum) best classes
+     */
+    public TopClasses topK(TermVector vector, int k, boolean prune) {
+        int classNum = this.classNames.length;
+        k = Math.max(0, Math.min(k, classNum));
+        double[] scores = newScores();
+        int[] active = new int[classNum];
+        for (int c = 0; c < classNum; c++) {
+            active[c] = c;
+        }
+        int activeNum = classNum;
+        TopKHeap heap = new TopKHeap(k);
+        if (prune && k > 0 && k < classNum) {
+            vector.sort();
+            addUnseen(vector, scores);
+            double[] maxLogProb = maxLogProb();
+            long remaining = 0;
+            for (int i = 0; i < vector.size(); i++) {
+                remaining += vector.tf(i);
+            }
+            int interval = PRUNE_INTERVAL;
+            int next = interval;
+            for (int i = 0; i < vector.size(); i++) {
+                addWordId(vector.id(i), vector.tf(i), active, activeNum, scores);
+                remaining -= vector.tf(i);
+                if (i + 1 < next || activeNum == k || remaining == 0) {
+                    continue;
+                }
+                heap.clear(k);
+                for (int a = 0; a < activeNum; a++) {
+                    int c = active[a];
+                    heap.offer(c, scores[c] + remaining * this.unseen[c]);
+                }
+                double threshold = heap.minScore();
+                threshold -= PRUNE_SLACK * Math.abs(threshold);
+                int kept = 0;
+                for (int a = 0; a < activeNum; a++) {
+                    int c = active[a];
+                    double bound = scores[c] + remaining * maxLogProb[c];
+                    if (bound >= threshold) {
+                        active[kept++] = c;
+                    } else {
+                        // the score of a dropped class is not added to
+                        // any more, it keeps its bound for the evidence
+                        scores[c] = bound;
+                    }
+                }
+                /* prune less often while the bounds are too loose to drop a class */
+                interval = kept == activeNum
+                    ? Math.min(interval << 1, MAX_PRUNE_INTERVAL) : PRUNE_INTERVAL;
+                next = i + 1 + interval;
+                activeNum = kept;
+            }
+        } else {
+            addVector(vector, scores);
+        }
+        // log sum exp of the scores of the remaining classes and the
+        // bounds of the dropped ones
+        double max = Double.NEGATIVE_INFINITY;
+        for (int c = 0; c < classNum; c++) {
+            max = Math.max(max, scores[c]);
+        }
+        double sum = 0;
+        for (int c = 0; c < classNum; c++) {
+            sum += Math.exp(scores[c] - max);
+        }
+        heap.clear(k);
+        for (int a = 0; a < activeNum; a++) {
+            int c = active[a];
+            heap.offer(c, scores[c]);
+        }
+        double logEvidence = max + Math.log(sum);
+        int[] classes = new int[k];
+        double[] logPosteriors = new double[k];
+        int size = heap.drain(classes, logPosteriors);
+        for (int i = 0; i < size; i++) {
+            logPosteriors[i] -= logEvidence;
+        }
+        return new TopClasses(this.classNames, classes, logPosteriors, size);
+    }
+
+    /**
+     * add the log probability of a word times tf to the scores of some
+     * classes, all classes are added in one contiguous pass
+     *
+     * @param wordId     word id
+     * @param tf         term frequency of the word
+     * @param classes    indexes of the classes
+     * @param classesNum the number of classes
+     * @param scores     scores of all classes
+     */
+    abstract void addWordId(int wordId, int tf, int[] classes, int classesNum,
+                            double[] scores);
+
+    /**
+     * @return the maximum log probability of any word of each class
+     */
+    double[] maxLogProb() {
+        double[] maxLogProb = this.maxLogProb;
+        if (maxLogProb == null) {
+            maxLogProb = this.unseen.clone();
+            int classNum = maxLogProb.length;
+            long length = length();
+            for (long i = 0; i < length; i++) {
+                int c = (int) (i % classNum);
+                maxLogProb[c] = Math.max(maxLogProb[c], logProb(i));
+            }
+            this.maxLogProb = maxLogProb;
+        }
+        return maxLogProb;
+    }
+
+    void addUnseen(TermVector vector, double[] scores) {
+        int unseenNum = vector.unseen();
+        if (unseenNum > 0) {
+            for (int c = 0; c < scores.length; c++) {
+                scores[c] += unseenNum * this.unseen[c];
+            }
+        }
+    }
+
+    /**
+     * @param wordId word id, -1 for a word out of the vocabulary
+     * @param scores scores from newScores
+     */
+    public abstract void addWordId(int wordId, double[] scores);
+
+    /**
+     * @param scores scores of all classes
+     * @return the class with the maximum score
+     */
+    public String best(double[] scores) {
+        return this.classNames[bestIndex(scores)];
+    }
+
+    /**
+     * @param scores scores of all classes
+     * @return index of the class with the maximum score
+     */
+    public int bestIndex(double[] scores) {
+        int best = 0;
+        for (int c = 1; c < scores.length; c++) {
+            if (scores[c] > scores[best]) {
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    public String[] getClassNames() {
+        return this.classNames;
+    }
+
+    /**
+     * @param c class index
+     * @return log prior probability of the class
+     */
+    public double logPrior(int c) {
+        return this.logPrior[c];
+    }
+
+    /**
+     * @param index word id * classNum + class index
+     * @return entry of the logProb table
+     */
+    abstract double logProb(long index);
+
+    /**
+     * @return the number of entries of the logProb table
+     */
+    abstract long length();
+
+    double[] unseen() {
+        return this.unseen;
+    }
+
+    public WordIndex getVocabulary() {
+        return this.vocabulary;
+    }
+}
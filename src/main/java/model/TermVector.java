@@ -0,0 +1,192 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * sparse term frequency vector of a document.
+ * each distinct word id of the document is kept once with its number of
+ * occurrences, words out of the vocabulary are only counted. the vector
+ * is reused for many documents after clear.
+ */
+public class TermVector {
+    private static final int EMPTY = -1;
+    private static final int RADIX_BITS = 11;
+    private static final int RADIX_MASK = (1 << RADIX_BITS) - 1;
+    // open addressing table: slot -> entry
+    private int[] slots;
+    private int mask;
+    // entry -> word id and its term frequency
+    private int[] ids;
+    private int[] tfs;
+    private int size;
+    // the number of words out of the vocabulary
+    private int unseen;
+    private boolean sorted = true;
+    // buffers of sort, swapped with ids and tfs in each pass
+    private int[] sortIds;
+    private int[] sortTfs;
+    private final int[] radixCount = new int[1 << RADIX_BITS];
+
+    public TermVector() {
+        this(64);
+    }
+
+    /**
+     * @param expectedSize expected number of distinct words of a document
+     */
+    public TermVector(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1;
+        this.slots = new int[capacity];
+        Arrays.fill(this.slots, EMPTY);
+        this.mask = capacity - 1;
+        this.ids = new int[capacity >> 1];
+        this.tfs = new int[capacity >> 1];
+    }
+
+    /**
+     * add one occurrence of a word
+     *
+     * @param wordId word id, -1 for a word out of the vocabulary
+     */
+    public void add(int wordId) {
+        add(wordId, 1);
+    }
+
+    /**
+     * add occurrences of a word
+     *
+     * @param wordId word id, -1 for a word out of the vocabulary
+     * @param tf     the number of occurrences
+     */
+    public void add(int wordId, int tf) {
+        if (wordId < 0) {
+            this.unseen += tf;
+            return;
+        }
+        int slot = mix(wordId) & this.mask;
+        int entry;
+        while ((entry = this.slots[slot]) != EMPTY) {
+            if (this.ids[entry] == wordId) {
+                this.tfs[entry] += tf;
+                return;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        entry = this.size++;
+        this.ids[entry] = wordId;
+        this.tfs[entry] = tf;
+        this.slots[slot] = entry;
+        this.sorted = false;
+        // keep load factor under 0.5
+        if (this.size * 2 >= this.slots.length) {
+            grow();
+        }
+    }
+
+    /**
+     * @return the number of distinct words in the vocabulary
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @param entry entry index in [0, size)
+     * @return word id of the entry
+     */
+    public int id(int entry) {
+        return this.ids[entry];
+    }
+
+    /**
+     * @param entry entry index in [0, size)
+     * @return term frequency of the entry
+     */
+    public int tf(int entry) {
+        return this.tfs[entry];
+    }
+
+    /**
+     * @return the number of words out of the vocabulary
+     */
+    public int unseen() {
+        return this.unseen;
+    }
+
+    /**
+     * sort the entries by word id with a radix sort of RADIX_BITS per pass,
+     * the vector can not be added to after this until clear
+     */
+    public void sort() {
+        if (this.sorted) {
+            return;
+        }
+        int maxId = 0;
+        for (int i = 0; i < this.size; i++) {
+            maxId = Math.max(maxId, this.ids[i]);
+        }
+        if (this.sortIds == null || this.sortIds.length < this.ids.length) {
+            this.sortIds = new int[this.ids.length];
+            this.sortTfs = new int[this.tfs.length];
+        }
+        int[] count = this.radixCount;
+        for (int shift = 0; shift == 0 || maxId >>> shift != 0; shift += RADIX_BITS) {
+            Arrays.fill(count, 0);
+            for (int i = 0; i < this.size; i++) {
+                count[(this.ids[i] >>> shift) & RADIX_MASK]++;
+            }
+            for (int b = 0, start = 0; b < count.length; b++) {
+                int num = count[b];
+                count[b] = start;
+                start += num;
+            }
+            for (int i = 0; i < this.size; i++) {
+                int to = count[(this.ids[i] >>> shift) & RADIX_MASK]++;
+                this.sortIds[to] = this.ids[i];
+                this.sortTfs[to] = this.tfs[i];
+            }
+            int[] ids = this.ids;
+            this.ids = this.sortIds;
+            this.sortIds = ids;
+            int[] tfs = this.tfs;
+            this.tfs = this.sortTfs;
+            this.sortTfs = tfs;
+        }
+        Arrays.fill(this.slots, EMPTY);
+        this.sorted = true;
+    }
+
+    /**
+     * remove all words
+     */
+    public void clear() {
+        // the slots of a sorted vector are already empty
+        if (!this.sorted) {
+            Arrays.fill(this.slots, EMPTY);
+        }
+        this.size = 0;
+        this.unseen = 0;
+        this.sorted = true;
+    }
+
+    private void grow() {
+        int capacity = this.slots.length << 1;
+        this.slots = new int[capacity];
+        Arrays.fill(this.slots, EMPTY);
+        this.mask = capacity - 1;
+        this.ids = Arrays.copyOf(this.ids, capacity >> 1);
+        this.tfs = Arrays.copyOf(this.tfs, capacity >> 1);
+        for (int entry = 0; entry < this.size; entry++) {
+            int slot = mix(this.ids[entry]) & this.mask;
+            while (this.slots[slot] != EMPTY) {
+                slot = (slot + 1) & this.mask;
+            }
+            this.slots[slot] = entry;
+        }
+    }
+
+    private static int mix(int h) {
+        h *= 0x9e3779b9;
+        return h ^ h >>> 16;
+    }
+}
@@ -0,0 +1,52 @@
+package model;
+
+/**
+ * the best classes of a document, best first, with their log posterior
+ * probability. the posteriors of a pruned ScoringModel.topK are lower
+ * bounds of the exact ones.
+ */
+public class TopClasses {
+    private final String[] classNames;
+    private final int[] classes;
+    private final double[] logPosteriors;
+    private final int size;
+
+    TopClasses(String[] classNames, int[] classes, double[] logPosteriors, int size) {
+        this.classNames = classNames;
+        this.classes = classes;
+        this.logPosteriors = logPosteriors;
+        this.size = size;
+    }
+
+    /**
+     * @return the number of classes
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @param i rank of a class, 0 is the best
+     * @return class index in the model
+     */
+    public int classIndex(int i) {
+        return this.classes[i];
+    }
+
+    /**
+     * @param i rank of a class, 0 is the best
+     * @return class name
+     */
+    public String className(int i) {
+        return this.classNames[this.classes[i]];
+    }
+
+    /**
+     * @param i rank of a class, 0 is the best
+     * @return log posterior probability of the class, a lower bound of it
+     * if the classes were pruned
+     */
+    public double logPosterior(int i) {
+        return this.logPosteriors[i];
+    }
+}
@@ -0,0 +1,114 @@
+package model;
+
+/**
+ * bounded min-heap of (class index, score) pairs on primitive arrays.
+ * the heap keeps the k best pairs offered to it, its root is the worst of
+ * them. of two equal scores the lower class index is the better one, like
+ * ScoringModel.bestIndex.
+ */
+class TopKHeap {
+    private final int[] classes;
+    private final double[] scores;
+    private int k;
+    private int size;
+
+    /**
+     * @param capacity maximum k
+     */
+    TopKHeap(int capacity) {
+        this.classes = new int[capacity];
+        this.scores = new double[capacity];
+    }
+
+    /**
+     * remove all pairs
+     *
+     * @param k the number of pairs to keep, at most the capacity
+     */
+    void clear(int k) {
+        this.k = k;
+        this.size = 0;
+    }
+
+    /**
+     * @return the worst kept score
+     */
+    double minScore() {
+        return this.scores[0];
+    }
+
+    /**
+     * keep the pair if it is one of the k best so far
+     *
+     * @param c     class index
+     * @param score score of the class
+     */
+    void offer(int c, double score) {
+        if (this.size < this.k) {
+            int i = this.size++;
+            // sift up
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!worse(c, score, this.classes[parent], this.scores[parent])) {
+                    break;
+                }
+                this.classes[i] = this.classes[parent];
+                this.scores[i] = this.scores[parent];
+                i = parent;
+            }
+            this.classes[i] = c;
+            this.scores[i] = score;
+        } else if (this.k > 0 && worse(this.classes[0], this.scores[0], c, score)) {
+            siftDown(c, score, this.size);
+        }
+    }
+
+    /**
+     * empty the heap into arrays, best first
+     *
+     * @param classes class indexes, filled
+     * @param scores  scores, filled
+     * @return the number of pairs
+     */
+    int drain(int[] classes, double[] scores) {
+        int num = this.size;
+        // the root is the worst pair, so it goes to the end, then the last
+        // pair of the heap is moved to the root
+        for (int end = num - 1; end >= 0; end--) {
+            classes[end] = this.classes[0];
+            scores[end] = this.scores[0];
+            siftDown(this.classes[end], this.scores[end], end);
+        }
+        this.size = 0;
+        return num;
+    }
+
+    /**
+     * place a pair at the root of a heap of size pairs and sift it down
+     */
+    private void siftDown(int c, double score, int size) {
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && worse(this.classes[child + 1], this.scores[child + 1],
+                this.classes[child], this.scores[child])) {
+                child++;
+            }
+            if (!worse(this.classes[child], this.scores[child], c, score)) {
+                break;
+            }
+            this.classes[i] = this.classes[child];
+            this.scores[i] = this.scores[child];
+            i = child;
+        }
+        this.classes[i] = c;
+        this.scores[i] = score;
+    }
+
+    private static boolean worse(int c1, double score1, int c2, double score2) {
+        return score1 < score2 || (score1 == score2 && c1 > c2);
+    }
+}
@@ -0,0 +1,349 @@
+package model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * global vocabulary which maps each word to a dense int id.
+ * words are stored once as utf-8 bytes in a single byte pool and indexed
+ * by an open addressing hash table of ids, so there is no String or boxed
+ * Integer per word.
+ * a hashed vocabulary keeps no word at all, the id of a word is its hash
+ * modulo a fixed number of buckets (the hashing trick), so its size and
+ * the size of everything indexed by word id never grow.
+ */
+public class Vocabulary implements WordIndex {
+    private static final int EMPTY = -1;
+    // open addressing table: slot -> word id
+    private int[] slots;
+    private int mask;
+    // utf-8 bytes of all words
+    private byte[] pool;
+    private int poolSize;
+    // word id -> start offset in pool, offsets[size] is the end of pool
+    private int[] offsets;
+    // word id -> hash, kept to rehash without touching the pool, made on
+    // the first add to a vocabulary read with its table
+    private int[] hashes;
+    private int size;
+    // the number of buckets of a hashed vocabulary, 0 if words are kept
+    private int buckets;
+
+    public Vocabulary() {
+        this(1024);
+    }
+
+    /**
+     * @param expectedSize expected number of words
+     */
+    public Vocabulary(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1;
+        this.slots = new int[capacity];
+        Arrays.fill(this.slots, EMPTY);
+        this.mask = capacity - 1;
+        this.pool = new byte[Math.max(64, expectedSize * 8)];
+        this.offsets = new int[Math.max(16, expectedSize) + 1];
+        this.hashes = new int[Math.max(16, expectedSize)];
+    }
+
+    /**
+     * @param buckets the number of buckets
+     * @return a hashed vocabulary
+     */
+    public static Vocabulary hashed(int buckets) {
+        if (buckets <= 0) {
+            throw new IllegalArgumentException("buckets must be positive: " + buckets);
+        }
+        Vocabulary vocabulary = new Vocabulary(0);
+        vocabulary.buckets = buckets;
+        vocabulary.size = buckets;
+        return vocabulary;
+    }
+
+    @Override
+    public boolean isHashed() {
+        return this.buckets > 0;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @param bytes   buffer holding the word
+     * @param off     start of the word
+     * @param len     length of the word
+     * @param buckets the number of buckets
+     * @return bucket of the word in a hashed vocabulary
+     */
+    public static int bucket(byte[] bytes, int off, int len, int buckets) {
+        return Math.floorMod(hash(bytes, off, len), buckets);
+    }
+
+    @Override
+    public int get(byte[] bytes, int off, int len) {
+        if (this.buckets > 0) {
+            return bucket(bytes, off, len, this.buckets);
+        }
+        int hash = hash(bytes, off, len);
+        int slot = hash & this.mask;
+        int[] hashes = this.hashes;
+        int id;
+        while ((id = this.slots[slot]) != EMPTY) {
+            if ((hashes == null || hashes[id] == hash) && equalsAt(id, bytes, off, len)) {
+                return id;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        return -1;
+    }
+
+    /**
+     * @param word the word
+     * @return id of the word, a new id is assigned if it is not present
+     */
+    public int add(String word) {
+        byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+        return add(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @param bytes buffer holding the word
+     * @param off   start of the word
+     * @param len   length of the word
+     * @return id of the word, a new id is assigned if it is not present
+     */
+    public int add(byte[] bytes, int off, int len) {
+        if (this.buckets > 0) {
+            return bucket(bytes, off, len, this.buckets);
+        }
+        if (this.hashes == null) {
+            this.hashes = new int[Math.max(16, this.size)];
+            for (int id = 0; id < this.size; id++) {
+                this.hashes[id] = hash(this.pool, this.offsets[id],
+                    this.offsets[id + 1] - this.offsets[id]);
+            }
+        }
+        int hash = hash(bytes, off, len);
+        int slot = hash & this.mask;
+        int id;
+        while ((id = this.slots[slot]) != EMPTY) {
+            if (this.hashes[id] == hash && equalsAt(id, bytes, off, len)) {
+                return id;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        id = append(bytes, off, len, hash);
+        this.slots[slot] = id;
+        // keep load factor under 0.5
+        if (this.size * 2 > this.slots.length) {
+            rehash(this.slots.length << 1);
+        }
+        return id;
+    }
+
+    @Override
+    public String word(int id) {
+        if (this.buckets > 0) {
+            throw new UnsupportedOperationException("hashed vocabulary keeps no word");
+        }
+        return new String(this.pool, this.offsets[id],
+            this.offsets[id + 1] - this.offsets[id], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * the raw bytes of the words, word id is the slice from wordOffset(id)
+     * to wordOffset(id + 1). the bytes are as they were added, so a word
+     * which is not valid utf-8 is not changed like by word
+     *
+     * @return the byte pool, not copied
+     */
+    public byte[] wordBytes() {
+        if (this.buckets > 0) {
+            throw new UnsupportedOperationException("hashed vocabulary keeps no word");
+        }
+        return this.pool;
+    }
+
+    /**
+     * @param id word id, or size for the end of the last word
+     * @return start offset of the word in wordBytes
+     */
+    public int wordOffset(int id) {
+        return this.offsets[id];
+    }
+
+    /**
+     * write the vocabulary as the byte pool followed by the word offsets,
+     * a hashed vocabulary is written as the negative number of buckets
+     *
+     * @param out output
+     * @throws IOException exception from out
+     */
+    public void write(DataOutput out) throws IOException {
+        if (this.buckets > 0) {
+            out.writeInt(-this.buckets);
+            return;
+        }
+        out.writeInt(this.size);
+        out.writeInt(this.poolSize);
+        out.write(this.pool, 0, this.poolSize);
+        for (int i = 1; i <= this.size; i++) {
+            out.writeInt(this.offsets[i]);
+        }
+    }
+
+    /**
+     * @param in input written by write
+     * @return the vocabulary
+     * @throws IOException exception from in
+     */
+    public static Vocabulary read(DataInput in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            return hashed(-size);
+        }
+        int poolSize = in.readInt();
+        byte[] pool = new byte[poolSize];
+        in.readFully(pool);
+        int[] offsets = new int[size + 1];
+        for (int i = 1; i <= size; i++) {
+            offsets[i] = in.readInt();
+        }
+        return fromPool(pool, offsets, size);
+    }
+
+    byte[] pool() {
+        return this.pool;
+    }
+
+    int poolSize() {
+        return this.poolSize;
+    }
+
+    int[] offsets() {
+        return this.offsets;
+    }
+
+    int[] slots() {
+        return this.slots;
+    }
+
+    /**
+     * build a vocabulary over an existing byte pool
+     *
+     * @param pool    utf-8 bytes of all words
+     * @param offsets start offset of each word, offsets[size] is the end
+     * @param size    the number of words
+     * @return the vocabulary
+     */
+    static Vocabulary fromPool(byte[] pool, int[] offsets, int size) {
+        Vocabulary vocabulary = new Vocabulary(size);
+        vocabulary.pool = pool;
+        vocabulary.poolSize = offsets[size];
+        vocabulary.offsets = offsets;
+        vocabulary.hashes = new int[Math.max(16, size)];
+        for (int id = 0; id < size; id++) {
+            vocabulary.hashes[id] = hash(pool, offsets[id],
+                offsets[id + 1] - offsets[id]);
+        }
+        vocabulary.size = size;
+        vocabulary.rehash(vocabulary.slots.length);
+        return vocabulary;
+    }
+
+    /**
+     * build a vocabulary over an existing byte pool and hash table, the
+     * words are not hashed again
+     *
+     * @param pool    utf-8 bytes of all words
+     * @param offsets start offset of each word, offsets[size] is the end
+     * @param slots   open addressing table of word ids as returned by slots
+     * @param size    the number of words
+     * @return the vocabulary
+     */
+    static Vocabulary fromTable(byte[] pool, int[] offsets, int[] slots, int size) {
+        Vocabulary vocabulary = new Vocabulary(0);
+        vocabulary.pool = pool;
+        vocabulary.poolSize = offsets[size];
+        vocabulary.offsets = offsets;
+        vocabulary.slots = slots;
+        vocabulary.mask = slots.length - 1;
+        vocabulary.hashes = null;
+        vocabulary.size = size;
+        return vocabulary;
+    }
+
+    private int append(byte[] bytes, int off, int len, int hash) {
+        if (this.poolSize + len > this.pool.length) {
+            this.pool = Arrays.copyOf(this.pool,
+                Math.max(this.pool.length << 1, this.poolSize + len));
+        }
+        if (this.size + 1 >= this.offsets.length) {
+            this.offsets = Arrays.copyOf(this.offsets, this.offsets.length << 1);
+        }
+        if (this.size >= this.hashes.length) {
+            this.hashes = Arrays.copyOf(this.hashes, this.hashes.length << 1);
+        }
+        System.arraycopy(bytes, off, this.pool, this.poolSize, len);
+        int id = this.size++;
+        this.offsets[id] = this.poolSize;
+        this.poolSize += len;
+        this.offsets[this.size] = this.poolSize;
+        this.hashes[id] = hash;
+        return id;
+    }
+
+    private void rehash(int capacity) {
+        this.slots = new int[capacity];
+        Arrays.fill(this.slots, EMPTY);
+        this.mask = capacity - 1;
+        for (int id = 0; id < this.size; id++) {
+            int slot = this.hashes[id] & this.mask;
+            while (this.slots[slot] != EMPTY) {
+                slot = (slot + 1) & this.mask;
+            }
+            this.slots[slot] = id;
+        }
+    }
+
+    private boolean equalsAt(int id, byte[] bytes, int off, int len) {
+        int start = this.offsets[id];
+        if (this.offsets[id + 1] - start != len) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (this.pool[start + i] != bytes[off + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * FNV-1a over the bytes followed by a murmur3 finalizer, the hash of
+     * words and keys everywhere in training and scoring
+     *
+     * @param bytes buffer holding the bytes
+     * @param off   start of the bytes
+     * @param len   the number of bytes
+     * @return hash of the bytes
+     */
+    public static int hash(byte[] bytes, int off, int len) {
+        int h = 0x811c9dc5;
+        for (int i = off; i < off + len; i++) {
+            h ^= bytes[i];
+            h *= 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
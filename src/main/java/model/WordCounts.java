@@ -0,0 +1,269 @@
+package model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * word counts of all classes over a global vocabulary.
+ * counts are kept in primitive arrays indexed by word id.
+ */
+public class WordCounts {
+    private final Vocabulary vocabulary;
+    // class names, the index of a class is used in all arrays below
+    private String[] classNames;
+    private final Map<String, Integer> classIndex;
+    // the number of all words in a class
+    private long[] totalWordsNumByClass;
+    // the number of distinct words in a class
+    private int[] distinctWordsNumByClass;
+    // int[class][word id]: the number of a word in a specific class
+    private int[][] wordsNumByClass;
+
+    public WordCounts() {
+        this(new Vocabulary());
+    }
+
+    /**
+     * @param vocabulary vocabulary shared by all classes
+     */
+    public WordCounts(Vocabulary vocabulary) {
+        this.vocabulary = vocabulary;
+        this.classNames = new String[0];
+        this.classIndex = new HashMap<>();
+        this.totalWordsNumByClass = new long[0];
+        this.distinctWordsNumByClass = new int[0];
+        this.wordsNumByClass = new int[0][];
+    }
+
+    /**
+     * @param className class name
+     * @return index of the class, a new index is assigned if it is not present
+     */
+    public int addClass(String className) {
+        Integer index = this.classIndex.get(className);
+        if (index != null) {
+            return index;
+        }
+        int c = this.classNames.length;
+        this.classNames = Arrays.copyOf(this.classNames, c + 1);
+        this.classNames[c] = className;
+        this.totalWordsNumByClass = Arrays.copyOf(this.totalWordsNumByClass, c + 1);
+        this.distinctWordsNumByClass = Arrays.copyOf(this.distinctWordsNumByClass, c + 1);
+        this.wordsNumByClass = Arrays.copyOf(this.wordsNumByClass, c + 1);
+        this.wordsNumByClass[c] = new int[0];
+        this.classIndex.put(className, c);
+        return c;
+    }
+
+    /**
+     * @param className class name
+     * @return index of the class, -1 if the class is not present
+     */
+    public int classIndex(String className) {
+        Integer index = this.classIndex.get(className);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @param c      class index
+     * @param word   the word
+     * @param num    the number of the word to add
+     */
+    public void add(int c, String word, int num) {
+        add(c, this.vocabulary.add(word), num);
+    }
+
+    /**
+     * @param c      class index
+     * @param wordId word id in the vocabulary
+     * @param num    the number of the word to add, may be negative
+     */
+    public void add(int c, int wordId, int num) {
+        int[] counts = this.wordsNumByClass[c];
+        if (wordId >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(wordId + 1,
+                Math.max(16, counts.length + (counts.length >> 1))));
+            this.wordsNumByClass[c] = counts;
+        }
+        int old = counts[wordId];
+        counts[wordId] = old + num;
+        if (old == 0 && num != 0) {
+            this.distinctWordsNumByClass[c]++;
+        } else if (old != 0 && old + num == 0) {
+            this.distinctWordsNumByClass[c]--;
+        }
+        this.totalWordsNumByClass[c] += num;
+    }
+
+    /**
+     * add all counts of other word counts, classes and words which are not
+     * present are added. a hashed vocabulary can only be merged with a
+     * hashed vocabulary of the same size.
+     *
+     * @param other word counts over another vocabulary
+     */
+    public void merge(WordCounts other) {
+        Vocabulary from = other.vocabulary;
+        if (from.isHashed() != this.vocabulary.isHashed()
+            || from.isHashed() && from.size() != this.vocabulary.size()) {
+            throw new IllegalArgumentException("can not merge word counts over "
+                + "different kinds of vocabulary");
+        }
+        // word id in other -> word id here
+        int[] ids = null;
+        if (!from.isHashed()) {
+            ids = new int[from.size()];
+            int[] offsets = from.offsets();
+            for (int w = 0; w < ids.length; w++) {
+                ids[w] = this.vocabulary.add(from.pool(), offsets[w],
+                    offsets[w + 1] - offsets[w]);
+            }
+        }
+        for (int o = 0; o < other.classNum(); o++) {
+            int c = addClass(other.classNames[o]);
+            int[] counts = other.wordsNumByClass[o];
+            for (int w = 0; w < counts.length; w++) {
+                if (counts[w] != 0) {
+                    add(c, ids == null ? w : ids[w], counts[w]);
+                }
+            }
+        }
+    }
+
+    /**
+     * add or subtract all counts of a class of other word counts over the
+     * same vocabulary
+     *
+     * @param c          class index here
+     * @param other      word counts sharing the vocabulary of this
+     * @param otherClass class index in other
+     * @param sign       1 to add, -1 to subtract
+     */
+    public void addCounts(int c, WordCounts other, int otherClass, int sign) {
+        if (other.vocabulary != this.vocabulary) {
+            throw new IllegalArgumentException("word counts do not share the vocabulary");
+        }
+        int[] counts = other.wordsNumByClass[otherClass];
+        for (int w = 0; w < counts.length; w++) {
+            if (counts[w] != 0) {
+                add(c, w, sign * counts[w]);
+            }
+        }
+    }
+
+    /**
+     * @return a copy of the counts sharing the vocabulary
+     */
+    public WordCounts copy() {
+        WordCounts copy = new WordCounts(this.vocabulary);
+        for (int c = 0; c < this.classNames.length; c++) {
+            copy.addClass(this.classNames[c]);
+            copy.wordsNumByClass[c] = this.wordsNumByClass[c].clone();
+        }
+        copy.totalWordsNumByClass = this.totalWordsNumByClass.clone();
+        copy.distinctWordsNumByClass = this.distinctWordsNumByClass.clone();
+        return copy;
+    }
+
+    /**
+     * @param c      class index
+     * @param wordId word id in the vocabulary
+     * @return the number of the word in the class
+     */
+    public int count(int c, int wordId) {
+        int[] counts = this.wordsNumByClass[c];
+        return wordId < counts.length ? counts[wordId] : 0;
+    }
+
+    public Vocabulary getVocabulary() {
+        return this.vocabulary;
+    }
+
+    public int classNum() {
+        return this.classNames.length;
+    }
+
+    public String[] getClassNames() {
+        return this.classNames;
+    }
+
+    public long totalWordsNum(int c) {
+        return this.totalWordsNumByClass[c];
+    }
+
+    public int distinctWordsNum(int c) {
+        return this.distinctWordsNumByClass[c];
+    }
+
+    /**
+     * @param c class index
+     * @return counts of the class indexed by word id, may be shorter
+     * than the vocabulary
+     */
+    public int[] counts(int c) {
+        return this.wordsNumByClass[c];
+    }
+
+    /**
+     * write the counts, the vocabulary is written first
+     *
+     * @param out output
+     * @throws IOException exception from out
+     */
+    public void write(DataOutput out) throws IOException {
+        this.vocabulary.write(out);
+        out.writeInt(this.classNames.length);
+        for (int c = 0; c < this.classNames.length; c++) {
+            out.writeUTF(this.classNames[c]);
+            int[] counts = this.wordsNumByClass[c];
+            int length = Math.min(counts.length, this.vocabulary.size());
+            out.writeInt(length);
+            for (int i = 0; i < length; i++) {
+                out.writeInt(counts[i]);
+            }
+        }
+    }
+
+    /**
+     * @param in input written by write
+     * @return word counts
+     * @throws IOException exception from in
+     */
+    public static WordCounts read(DataInput in) throws IOException {
+        WordCounts wordCounts = new WordCounts(Vocabulary.read(in));
+        int classNum = in.readInt();
+        for (int i = 0; i < classNum; i++) {
+            int c = wordCounts.addClass(in.readUTF());
+            int[] counts = new int[in.readInt()];
+            for (int j = 0; j < counts.length; j++) {
+                counts[j] = in.readInt();
+            }
+            wordCounts.setCounts(c, counts);
+        }
+        return wordCounts;
+    }
+
+    /**
+     * replace all counts of a class
+     *
+     * @param c      class index
+     * @param counts counts of the class indexed by word id
+     */
+    void setCounts(int c, int[] counts) {
+        long total = 0;
+        int distinct = 0;
+        for (int count : counts) {
+            total += count;
+            if (count != 0) {
+                distinct++;
+            }
+        }
+        this.wordsNumByClass[c] = counts;
+        this.totalWordsNumByClass[c] = total;
+        this.distinctWordsNumByClass[c] = distinct;
+    }
+}
@@ -0,0 +1,45 @@
+package model;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * read only map of words to dense int ids, used to score documents.
+ * implemented by the vocabulary built in training and by the vocabulary
+ * section of a model file used in place off the java heap.
+ */
+public interface WordIndex {
+    /**
+     * @return true if words are hashed into a fixed number of buckets
+     */
+    boolean isHashed();
+
+    /**
+     * @return the number of words, or buckets of a hashed vocabulary
+     */
+    int size();
+
+    /**
+     * @param word the word
+     * @return id of the word, -1 if the word is not in the vocabulary
+     */
+    default int get(String word) {
+        byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+        return get(bytes, 0, bytes.length);
+    }
+
+    /**
+     * look up a word given as a slice of utf-8 bytes
+     *
+     * @param bytes buffer holding the word
+     * @param off   start of the word
+     * @param len   length of the word
+     * @return id of the word, -1 if the word is not in the vocabulary
+     */
+    int get(byte[] bytes, int off, int len);
+
+    /**
+     * @param id word id
+     * @return the word
+     */
+    String word(int id);
+}
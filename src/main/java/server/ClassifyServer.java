@@ -0,0 +1,227 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import metrics.LatencyHistogram;
+import model.ModelRegistry;
+import model.ScoringModel;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * long running classification server on a localhost http port.
+ * the model is loaded once, requests are scored in micro batches. when the
+ * server is started from a model file, the file is watched by a
+ * ModelRegistry and a republished model is swapped in without a restart.
+ * <pre>
+ * POST /classify  body is one document, returns its class
+ * POST /batch     one document per line, returns one class per line
+ * GET  /metrics   request count, qps and latency percentiles as json
+ * </pre>
+ */
+public class ClassifyServer {
+    private static final Logger logger = Logger.getLogger(ClassifyServer.class);
+    // the number of threads which score batches
+    public static final String SCORERS = "naivebayes.server.scorers";
+    // maximum documents in a micro batch
+    public static final String BATCH_SIZE = "naivebayes.server.batch.size";
+    // maximum time in milliseconds to wait for a micro batch to fill
+    public static final String BATCH_WAIT_MS = "naivebayes.server.batch.wait.ms";
+    // the number of threads which handle http requests
+    public static final String HANDLERS = "naivebayes.server.handlers";
+    // time to wait for running handlers when the server stops
+    private static final long STOP_TIMEOUT_SECONDS = 5;
+
+    private final MicroBatcher batcher;
+    // the watched model file, null for a fixed model
+    private final ModelRegistry.LoadedModel loaded;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final long startTime = System.nanoTime();
+    private HttpServer server;
+    // threads of the http handlers, shut down by stop
+    private ExecutorService handlers;
+
+    /**
+     * @param conf  config of the server
+     * @param model the scoring model
+     */
+    public ClassifyServer(Configuration conf, ScoringModel model) {
+        this(conf, () -> model, null);
+    }
+
+    /**
+     * @param conf   config of the server
+     * @param loaded a model file of a ModelRegistry
+     */
+    public ClassifyServer(Configuration conf, ModelRegistry.LoadedModel loaded) {
+        this(conf, loaded, loaded);
+    }
+
+    private ClassifyServer(Configuration conf, Supplier<ScoringModel> model,
+                           ModelRegistry.LoadedModel loaded) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int batchSize = conf.getInt(BATCH_SIZE, 64);
+        this.loaded = loaded;
+        this.batcher = new MicroBatcher(model, conf.getInt(SCORERS, processors),
+            batchSize, conf.getLong(BATCH_WAIT_MS, 2), batchSize * 64);
+    }
+
+    /**
+     * @param args args[0]: model file
+     *             args[1]: port, default 8080
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || args.length > 2) {
+            System.out.println("Usage: ClassifyServer \"model file\" [port]");
+            return;
+        }
+        Configuration conf = new Configuration();
+        // the registry only holds the model of this server
+        ModelRegistry registry = new ModelRegistry(conf);
+        ModelRegistry.LoadedModel loaded = registry.get(new Path(args[0]));
+        int port = args.length == 2 ? Integer.parseInt(args[1]) : 8080;
+        new ClassifyServer(conf, loaded).start(port,
+            conf.getInt(HANDLERS, 2 * Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * @param port     port on the loopback address, 0 for any free port
+     * @param handlers the number of threads which handle http requests
+     * @return the bound port
+     * @throws IOException exception from HttpServer
+     */
+    public int start(int port, int handlers) throws IOException {
+        this.server = HttpServer.create(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        this.server.createContext("/classify", this::classify);
+        this.server.createContext("/batch", this::batch);
+        this.server.createContext("/metrics", this::metrics);
+        this.handlers = Executors.newFixedThreadPool(handlers);
+        this.server.setExecutor(this.handlers);
+        this.server.start();
+        int bound = this.server.getAddress().getPort();
+        logger.info("classify server listening on localhost:" + bound);
+        return bound;
+    }
+
+    /**
+     * stop accepting requests, fail the waiting ones and stop the handler
+     * threads, which would otherwise keep the jvm alive
+     */
+    public void stop() {
+        this.server.stop(0);
+        this.batcher.shutdown();
+        this.handlers.shutdown();
+        try {
+            if (!this.handlers.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                logger.warn("http handlers did not stop in " + STOP_TIMEOUT_SECONDS + "s");
+                this.handlers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            this.handlers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void classify(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        byte[] body = readBody(exchange);
+        try {
+            String result = this.batcher.submit(body, 0, body.length).get();
+            respond(exchange, 200, result + "\n");
+        } catch (InterruptedException | ExecutionException e) {
+            respond(exchange, 500, e.toString() + "\n");
+        }
+        this.latency.record((System.nanoTime() - start) / 1000);
+    }
+
+    private void batch(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        byte[] body = readBody(exchange);
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        try {
+            int lineStart = 0;
+            for (int i = 0; i <= body.length; i++) {
+                if (i == body.length || body[i] == '\n') {
+                    if (i > lineStart || i < body.length) {
+                        results.add(this.batcher.submit(body, lineStart, i - lineStart));
+                    }
+                    lineStart = i + 1;
+                }
+            }
+            StringBuilder response = new StringBuilder();
+            for (CompletableFuture<String> result : results) {
+                response.append(result.get()).append('\n');
+            }
+            respond(exchange, 200, response.toString());
+        } catch (InterruptedException | ExecutionException e) {
+            respond(exchange, 500, e.toString() + "\n");
+        }
+        this.latency.record((System.nanoTime() - start) / 1000);
+    }
+
+    private void metrics(HttpExchange exchange) throws IOException {
+        readBody(exchange);
+        respond(exchange, 200, metricsJson());
+    }
+
+    /**
+     * @return request count, qps and latency percentiles in microseconds
+     */
+    public String metricsJson() {
+        double seconds = (System.nanoTime() - this.startTime) / 1e9;
+        long batches = this.batcher.batches();
+        return "{\"requests\": " + this.latency.count()
+            + ", \"qps\": " + this.latency.count() / seconds
+            + ", \"docs\": " + this.batcher.docs()
+            + (this.loaded == null ? "" : ", \"model_version\": "
+            + this.loaded.getModelVersion() + ", \"reloads\": " + this.loaded.getReloads())
+            + ", \"batches\": " + batches
+            + ", \"mean_batch_size\": "
+            + (batches == 0 ? 0 : this.batcher.docs() / (double) batches)
+            + ", \"latency_us\": {\"mean\": " + this.latency.mean()
+            + ", \"p50\": " + this.latency.percentile(50)
+            + ", \"p99\": " + this.latency.percentile(99)
+            + ", \"p999\": " + this.latency.percentile(99.9)
+            + ", \"max\": " + this.latency.max() + "}}\n";
+    }
+
+    private static byte[] readBody(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        try (InputStream in = exchange.getRequestBody()) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                body.write(buffer, 0, n);
+            }
+        }
+        return body.toByteArray();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body)
+        throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
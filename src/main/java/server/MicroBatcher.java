@@ -0,0 +1,198 @@
+package server;
+
+import model.ScoringModel;
+import model.TermVector;
+import wordcount.ByteTokenizer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * groups concurrent classify requests into micro batches.
+ * each scorer thread takes the first waiting document, then collects more
+ * until the batch is full or the batch wait time is over, and scores the
+ * whole batch at once as term vectors with ScoringModel.scoreBatch.
+ * the model is taken once per batch, so a reloaded model is used from the
+ * next batch on.
+ */
+public class MicroBatcher {
+    private final Supplier<ScoringModel> model;
+    private final int batchSize;
+    private final long batchWaitNanos;
+    private final BlockingQueue<Request> queue;
+    private final List<Thread> scorers = new ArrayList<>();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong docs = new AtomicLong();
+    private volatile boolean running = true;
+
+    /**
+     * @param model       the scoring model
+     * @param scorerNum   the number of scorer threads
+     * @param batchSize   maximum documents in a batch
+     * @param batchWaitMs maximum time to wait for a batch to fill
+     * @param queueSize   maximum waiting documents
+     */
+    public MicroBatcher(ScoringModel model, int scorerNum, int batchSize,
+                        long batchWaitMs, int queueSize) {
+        this(() -> model, scorerNum, batchSize, batchWaitMs, queueSize);
+    }
+
+    /**
+     * @param model       supplier of the current scoring model
+     * @param scorerNum   the number of scorer threads
+     * @param batchSize   maximum documents in a batch
+     * @param batchWaitMs maximum time to wait for a batch to fill
+     * @param queueSize   maximum waiting documents
+     */
+    public MicroBatcher(Supplier<ScoringModel> model, int scorerNum, int batchSize,
+                        long batchWaitMs, int queueSize) {
+        this.model = model;
+        this.batchSize = batchSize;
+        this.batchWaitNanos = TimeUnit.MILLISECONDS.toNanos(batchWaitMs);
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        for (int i = 0; i < scorerNum; i++) {
+            Thread scorer = new Thread(this::score, "scorer-" + i);
+            scorer.setDaemon(true);
+            scorer.start();
+            this.scorers.add(scorer);
+        }
+    }
+
+    /**
+     * @param doc utf-8 bytes of the document
+     * @param off start of the document
+     * @param len length of the document
+     * @return future of the class of the document, failed if the batcher
+     * is shut down
+     * @throws InterruptedException if interrupted while the queue is full
+     */
+    public CompletableFuture<String> submit(byte[] doc, int off, int len)
+        throws InterruptedException {
+        Request request = new Request(doc, off, len);
+        if (!this.running) {
+            request.result.completeExceptionally(shutDown());
+            return request.result;
+        }
+        this.queue.put(request);
+        /* a request put while shutdown drains the queue is never scored */
+        if (!this.running && this.queue.remove(request)) {
+            request.result.completeExceptionally(shutDown());
+        }
+        return request.result;
+    }
+
+    public long batches() {
+        return this.batches.get();
+    }
+
+    public long docs() {
+        return this.docs.get();
+    }
+
+    /**
+     * stop the scorers and fail the requests which are still waiting
+     */
+    public void shutdown() {
+        this.running = false;
+        for (Thread scorer : this.scorers) {
+            scorer.interrupt();
+        }
+        boolean interrupted = false;
+        for (Thread scorer : this.scorers) {
+            while (scorer.isAlive()) {
+                try {
+                    scorer.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        List<Request> pending = new ArrayList<>();
+        this.queue.drainTo(pending);
+        for (Request request : pending) {
+            request.result.completeExceptionally(shutDown());
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static IllegalStateException shutDown() {
+        return new IllegalStateException("micro batcher is shut down");
+    }
+
+    private void score() {
+        List<Request> batch = new ArrayList<>(this.batchSize);
+        ByteTokenizer tokenizer = new ByteTokenizer();
+        TermVector[] vectors = new TermVector[this.batchSize];
+        double[][] scores = new double[this.batchSize][this.model.get().getClassNames().length];
+        for (int i = 0; i < this.batchSize; i++) {
+            vectors[i] = new TermVector();
+        }
+        while (this.running) {
+            try {
+                batch.add(this.queue.take());
+                long deadline = System.nanoTime() + this.batchWaitNanos;
+                while (batch.size() < this.batchSize) {
+                    if (this.queue.drainTo(batch, this.batchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long wait = deadline - System.nanoTime();
+                    Request request = wait > 0
+                        ? this.queue.poll(wait, TimeUnit.NANOSECONDS) : null;
+                    if (request == null) {
+                        break;
+                    }
+                    batch.add(request);
+                }
+            } catch (InterruptedException e) {
+                for (Request request : batch) {
+                    request.result.completeExceptionally(e);
+                }
+                return;
+            }
+            try {
+                ScoringModel model = this.model.get();
+                if (scores[0].length != model.getClassNames().length) {
+                    scores = new double[this.batchSize][model.getClassNames().length];
+                }
+                for (int i = 0; i < batch.size(); i++) {
+                    Request request = batch.get(i);
+                    vectors[i].clear();
+                    model.vectorize(request.doc, request.off, request.len,
+                        tokenizer, vectors[i]);
+                }
+                model.scoreBatch(vectors, batch.size(), scores);
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.get(i).result.complete(model.best(scores[i]));
+                }
+            } catch (RuntimeException e) {
+                for (Request request : batch) {
+                    request.result.completeExceptionally(e);
+                }
+            }
+            this.batches.incrementAndGet();
+            this.docs.addAndGet(batch.size());
+            batch.clear();
+        }
+    }
+
+    private static class Request {
+        final byte[] doc;
+        final int off;
+        final int len;
+        final CompletableFuture<String> result = new CompletableFuture<>();
+
+        Request(byte[] doc, int off, int len) {
+            this.doc = doc;
+            this.off = off;
+            this.len = len;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package wordcount;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * tokenizer which scans utf-8 bytes in place.
+ * tokens are separated by the same white space as StringTokenizer
+ * (space, tab, new line, carriage return and form feed). these bytes never
+ * occur inside a multi byte utf-8 character, so a token is reported as a
+ * slice of the input without decoding or copying it.
+ */
+public class ByteTokenizer {
+    private byte[] bytes;
+    private int pos;
+    private int end;
+    private int start;
+    private int length;
+
+    /**
+     * @param bytes buffer to scan
+     * @param off   start of the input in buffer
+     * @param len   length of the input
+     * @return this tokenizer
+     */
+    public ByteTokenizer reset(byte[] bytes, int off, int len) {
+        this.bytes = bytes;
+        this.pos = off;
+        this.end = off + len;
+        this.start = off;
+        this.length = 0;
+        return this;
+    }
+
+    /**
+     * move to the next token
+     *
+     * @return false if there is no more token
+     */
+    public boolean next() {
+        byte[] bytes = this.bytes;
+        int pos = this.pos;
+        int end = this.end;
+        while (pos < end && isDelimiter(bytes[pos])) {
+            pos++;
+        }
+        if (pos == end) {
+            this.pos = pos;
+            return false;
+        }
+        int start = pos;
+        while (pos < end && !isDelimiter(bytes[pos])) {
+            pos++;
+        }
+        this.start = start;
+        this.length = pos - start;
+        this.pos = pos;
+        return true;
+    }
+
+    public byte[] bytes() {
+        return this.bytes;
+    }
+
+    /**
+     * @return start of the current token in bytes()
+     */
+    public int start() {
+        return this.start;
+    }
+
+    /**
+     * @return length of the current token
+     */
+    public int length() {
+        return this.length;
+    }
+
+    public static boolean isDelimiter(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f';
+    }
+
+    /**
+     * consumer of token slices
+     */
+    public interface TokenConsumer {
+        void token(byte[] bytes, int off, int len) throws IOException;
+    }
+
+    /**
+     * tokenize a whole stream through a read buffer.
+     * a token which crosses the end of the buffer is moved to the front
+     * before the next read, the buffer only grows for a token longer
+     * than itself.
+     *
+     * @param in       the stream
+     * @param buffer   read buffer
+     * @param consumer consumer of each token
+     * @throws IOException exception from in or consumer
+     */
+    public static void tokenize(InputStream in, byte[] buffer, TokenConsumer consumer)
+        throws IOException {
+        int filled = 0;
+        int n;
+        while ((n = in.read(buffer, filled, buffer.length - filled)) != -1) {
+            filled += n;
+            int pos = 0;
+            int start = -1;
+            for (; pos < filled; pos++) {
+                if (isDelimiter(buffer[pos])) {
+                    if (start >= 0) {
+                        consumer.token(buffer, start, pos - start);
+                        start = -1;
+                    }
+                } else if (start < 0) {
+                    start = pos;
+                }
+            }
+            if (start < 0) {
+                filled = 0;
+            } else {
+                // keep the unfinished token for the next read
+                filled -= start;
+                System.arraycopy(buffer, start, buffer, 0, filled);
+                if (filled == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length << 1);
+                }
+            }
+        }
+        if (filled > 0) {
+            consumer.token(buffer, 0, filled);
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package wordcount;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.util.StringUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * composite (class, word) key of the training job.
+ * the class is given by its id in the class list of the job, the word
+ * either by its utf-8 bytes or by a word id assigned before the job, such
+ * as a bucket of a hashed vocabulary. the key is kept in its serialized
+ * form:
+ * <pre>
+ * varint classId, varint header, byte word[header >>> 1]
+ * </pre>
+ * the low bit of the header is set when the rest of the header is a word
+ * id instead of the length of the word.
+ * the serialized form is canonical, so keys are sorted and grouped by
+ * their bytes with the registered Comparator, which never deserializes a
+ * key. the order is only used to group equal keys.
+ */
+public class ClassWordKey implements WritableComparable<ClassWordKey> {
+    // class names of the job, the index of a class is its id
+    public static final String CLASSES = "naivebayes.job.classes";
+
+    private byte[] bytes = new byte[32];
+    private int length;
+
+    static {
+        WritableComparator.define(ClassWordKey.class, new Comparator());
+    }
+
+    /**
+     * @param conf    config of the job
+     * @param classes class names of the job in class id order
+     */
+    public static void setClasses(Configuration conf, Collection<String> classes) {
+        StringBuilder value = new StringBuilder();
+        for (String className : classes) {
+            if (value.length() > 0) {
+                value.append(StringUtils.COMMA);
+            }
+            value.append(StringUtils.escapeString(className));
+        }
+        conf.set(CLASSES, value.toString());
+    }
+
+    /**
+     * @param conf config of the job
+     * @return class names of the job in class id order
+     */
+    public static String[] getClasses(Configuration conf) {
+        String value = conf.get(CLASSES, "");
+        if (value.isEmpty()) {
+            return new String[0];
+        }
+        String[] classes = StringUtils.split(value, StringUtils.ESCAPE_CHAR, StringUtils.COMMA);
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = StringUtils.unEscapeString(classes[i]);
+        }
+        return classes;
+    }
+
+    /**
+     * @param classes class names in class id order
+     * @return class name -> class id
+     */
+    public static Map<String, Integer> classIds(String[] classes) {
+        Map<String, Integer> ids = new HashMap<>();
+        for (int i = 0; i < classes.length; i++) {
+            ids.put(classes[i], i);
+        }
+        return ids;
+    }
+
+    /**
+     * @param classId class id
+     * @return serialized class id, the prefix of every key of the class
+     */
+    public static byte[] prefix(int classId) {
+        byte[] prefix = new byte[5];
+        return Arrays.copyOf(prefix, putVarint(prefix, 0, classId));
+    }
+
+    /**
+     * set the key to (class, word)
+     *
+     * @param prefix prefix of the class
+     * @param bytes  buffer holding the word
+     * @param off    start of the word
+     * @param len    length of the word
+     */
+    public void set(byte[] prefix, byte[] bytes, int off, int len) {
+        int pos = setPrefix(prefix, len + 5);
+        pos = putVarint(this.bytes, pos, len << 1);
+        System.arraycopy(bytes, off, this.bytes, pos, len);
+        this.length = pos + len;
+    }
+
+    /**
+     * set the key to (class, word id)
+     *
+     * @param prefix prefix of the class
+     * @param wordId word id, not negative
+     */
+    public void setWordId(byte[] prefix, int wordId) {
+        int pos = setPrefix(prefix, 5);
+        this.length = putVarint(this.bytes, pos, wordId << 1 | 1);
+    }
+
+    /**
+     * set the key to a serialized key
+     *
+     * @param bytes buffer holding the key
+     * @param off   start of the key
+     * @param len   length of the key
+     */
+    public void set(byte[] bytes, int off, int len) {
+        ensureCapacity(len);
+        System.arraycopy(bytes, off, this.bytes, 0, len);
+        this.length = len;
+    }
+
+    /**
+     * @return buffer of the serialized key, valid up to getLength
+     */
+    public byte[] getBytes() {
+        return this.bytes;
+    }
+
+    public int getLength() {
+        return this.length;
+    }
+
+    public int getClassId() {
+        return readVarint(this.bytes, 0);
+    }
+
+    /**
+     * @return true if the word is given by a word id
+     */
+    public boolean hasWordId() {
+        return (header() & 1) != 0;
+    }
+
+    /**
+     * @return word id of a key which has one
+     */
+    public int getWordId() {
+        return header() >>> 1;
+    }
+
+    /**
+     * @return the word of a key which has no word id
+     */
+    public String getWord() {
+        int len = header() >>> 1;
+        try {
+            return Text.decode(this.bytes, this.length - len, len);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.write(this.bytes, 0, this.length);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        this.length = 0;
+        readVarint(in);
+        int header = readVarint(in);
+        if ((header & 1) == 0) {
+            int len = header >>> 1;
+            ensureCapacity(this.length + len);
+            in.readFully(this.bytes, this.length, len);
+            this.length += len;
+        }
+    }
+
+    @Override
+    public int compareTo(ClassWordKey other) {
+        return WritableComparator.compareBytes(this.bytes, 0, this.length,
+            other.bytes, 0, other.length);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ClassWordKey && compareTo((ClassWordKey) o) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return WritableComparator.hashBytes(this.bytes, this.length);
+    }
+
+    /**
+     * text form of the key, "classId\tword" or "classId\twordId"
+     */
+    @Override
+    public String toString() {
+        return getClassId() + "\t" + (hasWordId() ? String.valueOf(getWordId()) : getWord());
+    }
+
+    private int header() {
+        int pos = 0;
+        while (this.bytes[pos] < 0) {
+            pos++;
+        }
+        return readVarint(this.bytes, pos + 1);
+    }
+
+    private int setPrefix(byte[] prefix, int extra) {
+        ensureCapacity(prefix.length + extra);
+        System.arraycopy(prefix, 0, this.bytes, 0, prefix.length);
+        return prefix.length;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (this.bytes.length < capacity) {
+            this.bytes = Arrays.copyOf(this.bytes, Math.max(capacity, this.bytes.length << 1));
+        }
+    }
+
+    /**
+     * read a varint and append its bytes to the key
+     */
+    private int readVarint(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.readByte();
+            ensureCapacity(this.length + 1);
+            this.bytes[this.length++] = b;
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * @param bytes buffer to write to, at least 5 bytes from pos
+     * @param pos   position to write at
+     * @param value value to write, not negative
+     * @return position after the varint
+     */
+    static int putVarint(byte[] bytes, int pos, int value) {
+        while ((value & ~0x7f) != 0) {
+            bytes[pos++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        bytes[pos++] = (byte) value;
+        return pos;
+    }
+
+    /**
+     * @param bytes buffer holding a varint
+     * @param pos   start of the varint
+     * @return value of the varint
+     */
+    static int readVarint(byte[] bytes, int pos) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = bytes[pos++];
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * raw comparator of serialized keys, the bytes of two keys are
+     * compared without deserializing them
+     */
+    public static class Comparator extends WritableComparator {
+        public Comparator() {
+            super(ClassWordKey.class);
+        }
+
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            return compareBytes(b1, s1, l1, b2, s2, l2);
+        }
+    }
+}
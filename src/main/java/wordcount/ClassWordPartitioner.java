@@ -0,0 +1,18 @@
+package wordcount;
+
+import model.Vocabulary;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.mapreduce.Partitioner;
+
+/**
+ * partition (class, word) keys by a hash of the whole key, so the words of
+ * one big class are spread over all reducers instead of a single one.
+ */
+public class ClassWordPartitioner extends Partitioner<ClassWordKey, IntWritable> {
+
+    @Override
+    public int getPartition(ClassWordKey key, IntWritable value, int numPartitions) {
+        int h = Vocabulary.hash(key.getBytes(), 0, key.getLength());
+        return (h & Integer.MAX_VALUE) % numPartitions;
+    }
+}
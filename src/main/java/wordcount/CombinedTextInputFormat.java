@@ -0,0 +1,149 @@
+package wordcount;
+
+import filecount.MyCombineFileInputFormat;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileRecordReader;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.LineRecordReader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * text input format which packs many small documents into one split.
+ * the key of each line is the class of its document (the name of the
+ * parent directory), so the class is kept per file inside a split.
+ * when FOLDS is set every split is a FoldSplit and the key is the class
+ * key of the document in its fold.
+ */
+public class CombinedTextInputFormat extends CombineFileInputFormat<Text, Text> {
+    // file of "class\tdocument\tfold" lines for cross validation
+    public static final String FOLDS = "naivebayes.cv.folds";
+
+    @Override
+    public List<InputSplit> getSplits(JobContext job) throws IOException {
+        Configuration conf = job.getConfiguration();
+        setMaxSplitSize(conf.getLong(
+            MyCombineFileInputFormat.SPLIT_MAXSIZE,
+            MyCombineFileInputFormat.DEFAULT_SPLIT_MAXSIZE));
+        List<InputSplit> splits = super.getSplits(job);
+        if (conf.get(FOLDS) == null) {
+            return splits;
+        }
+        Map<String, Integer> folds = readFolds(conf, new Path(conf.get(FOLDS)));
+        List<InputSplit> foldSplits = new ArrayList<>(splits.size());
+        for (InputSplit split : splits) {
+            CombineFileSplit combineSplit = (CombineFileSplit) split;
+            int[] splitFolds = new int[combineSplit.getNumPaths()];
+            for (int i = 0; i < splitFolds.length; i++) {
+                Path doc = combineSplit.getPath(i);
+                Integer fold = folds.get(WordCountMapper.className(doc)
+                    + '\t' + doc.getName());
+                if (fold == null) {
+                    throw new IOException("no fold for " + doc);
+                }
+                splitFolds[i] = fold;
+            }
+            foldSplits.add(new FoldSplit(combineSplit, splitFolds));
+        }
+        return foldSplits;
+    }
+
+    private static Map<String, Integer> readFolds(Configuration conf, Path file)
+        throws IOException {
+        Map<String, Integer> folds = new HashMap<>();
+        FileSystem fs = file.getFileSystem(conf);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+            fs.open(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.lastIndexOf('\t');
+                folds.put(line.substring(0, tab), Integer.parseInt(line.substring(tab + 1)));
+            }
+        }
+        return folds;
+    }
+
+    @Override
+    protected boolean isSplitable(JobContext context, Path file) {
+        return false;
+    }
+
+    public RecordReader<Text, Text> createRecordReader(InputSplit split,
+                                                       TaskAttemptContext context)
+        throws IOException {
+        return new CombineFileRecordReader<>((CombineFileSplit) split, context,
+            CombinedTextReader.class);
+    }
+
+    /**
+     * @param split a combined split
+     * @param index index of a document in the split
+     * @return class of the document, or its class key in the fold of a
+     * FoldSplit
+     */
+    public static String classKey(CombineFileSplit split, int index) {
+        String className = WordCountMapper.className(split.getPath(index));
+        if (split instanceof FoldSplit) {
+            return FoldSplit.foldClass(className, ((FoldSplit) split).getFold(index));
+        }
+        return className;
+    }
+
+    /**
+     * line reader over a single document of a combined split
+     */
+    public static class CombinedTextReader extends RecordReader<Text, Text> {
+        private final LineRecordReader reader = new LineRecordReader();
+        private final FileSplit fileSplit;
+        private final Text key;
+
+        public CombinedTextReader(CombineFileSplit split, TaskAttemptContext context,
+                                  Integer index) {
+            this.fileSplit = new FileSplit(split.getPath(index),
+                split.getOffset(index), split.getLength(index),
+                (String[]) null);
+            this.key = new Text(classKey(split, index));
+        }
+
+        public void initialize(InputSplit inputSplit, TaskAttemptContext context)
+            throws IOException {
+            this.reader.initialize(this.fileSplit, context);
+        }
+
+        public boolean nextKeyValue() throws IOException {
+            return this.reader.nextKeyValue();
+        }
+
+        public Text getCurrentKey() {
+            return this.key;
+        }
+
+        public Text getCurrentValue() {
+            return this.reader.getCurrentValue();
+        }
+
+        public float getProgress() throws IOException {
+            return this.reader.getProgress();
+        }
+
+        public void close() throws IOException {
+            this.reader.close();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package wordcount;
+
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * compact binary output of the word count job.
+ * <pre>
+ * header: byte MAGIC[4], varint classNum, (varint length, byte name[length])*
+ * record: serialized ClassWordKey, varint count
+ * </pre>
+ * a varint holds 7 bits per byte, low bits first, the high bit of a byte
+ * is set when more bytes follow. counts are never negative. the header
+ * holds the class list of the job, so a part file is read without the
+ * config of the job.
+ */
+public class CountOutputFormat extends FileOutputFormat<ClassWordKey, IntWritable> {
+    public static final byte[] MAGIC = {'N', 'B', 'C', '2'};
+
+    @Override
+    public RecordWriter<ClassWordKey, IntWritable> getRecordWriter(TaskAttemptContext context)
+        throws IOException {
+        Path file = getDefaultWorkFile(context, "");
+        FSDataOutputStream out = file.getFileSystem(context.getConfiguration())
+            .create(file, false);
+        return new CountWriter(out, ClassWordKey.getClasses(context.getConfiguration()));
+    }
+
+    /**
+     * write the header of a count file
+     *
+     * @param out     output
+     * @param classes class names of the job in class id order
+     * @throws IOException exception from out
+     */
+    public static void writeHeader(OutputStream out, String[] classes) throws IOException {
+        out.write(MAGIC);
+        writeVarint(out, classes.length);
+        for (String className : classes) {
+            byte[] name = className.getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, name.length);
+            out.write(name);
+        }
+    }
+
+    /**
+     * @param out   output
+     * @param value value to write, not negative
+     * @throws IOException exception from out
+     */
+    public static void writeVarint(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static class CountWriter extends RecordWriter<ClassWordKey, IntWritable> {
+        private final OutputStream out;
+
+        CountWriter(OutputStream out, String[] classes) throws IOException {
+            this.out = new BufferedOutputStream(out, 1 << 16);
+            writeHeader(this.out, classes);
+        }
+
+        @Override
+        public void write(ClassWordKey key, IntWritable value) throws IOException {
+            this.out.write(key.getBytes(), 0, key.getLength());
+            writeVarint(this.out, value.get());
+        }
+
+        @Override
+        public void close(TaskAttemptContext context) throws IOException {
+            this.out.close();
+        }
+    }
+}
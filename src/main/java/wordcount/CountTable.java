@@ -0,0 +1,141 @@
+package wordcount;
+
+import model.Vocabulary;
+
+import java.util.Arrays;
+
+/**
+ * bounded hash table of byte keys to int counts for in-mapper combining.
+ * keys are copied into a single byte pool and indexed by open addressing,
+ * the table reports full when it reaches its entry or byte limit and is
+ * reused after clear.
+ */
+public class CountTable {
+    private static final int EMPTY = -1;
+    private final int maxEntries;
+    private final int maxBytes;
+    // open addressing table: slot -> entry
+    private final int[] slots;
+    private final int mask;
+    // key bytes of all entries
+    private byte[] pool;
+    private int poolSize;
+    // entry -> start of key in pool, starts[size] is the end of pool
+    private final int[] starts;
+    private final int[] hashes;
+    private final int[] counts;
+    private int size;
+
+    /**
+     * @param maxEntries maximum number of keys
+     * @param maxBytes   maximum bytes of all keys
+     */
+    public CountTable(int maxEntries, int maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        int capacity = Integer.highestOneBit(Math.max(16, maxEntries * 2 - 1)) << 1;
+        this.slots = new int[capacity];
+        Arrays.fill(this.slots, EMPTY);
+        this.mask = capacity - 1;
+        this.pool = new byte[Math.min(maxBytes, 1 << 16)];
+        this.starts = new int[maxEntries + 1];
+        this.hashes = new int[maxEntries];
+        this.counts = new int[maxEntries];
+    }
+
+    /**
+     * add to the count of a key, the table must not be full
+     *
+     * @param bytes buffer holding the key
+     * @param off   start of the key
+     * @param len   length of the key
+     * @param num   number to add
+     * @return true if the key was already in the table
+     */
+    public boolean add(byte[] bytes, int off, int len, int num) {
+        int hash = Vocabulary.hash(bytes, off, len);
+        int slot = hash & this.mask;
+        int entry;
+        while ((entry = this.slots[slot]) != EMPTY) {
+            if (this.hashes[entry] == hash && equalsAt(entry, bytes, off, len)) {
+                this.counts[entry] += num;
+                return true;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        if (this.poolSize + len > this.pool.length) {
+            this.pool = Arrays.copyOf(this.pool,
+                Math.max(this.pool.length << 1, this.poolSize + len));
+        }
+        System.arraycopy(bytes, off, this.pool, this.poolSize, len);
+        entry = this.size++;
+        this.starts[entry] = this.poolSize;
+        this.poolSize += len;
+        this.starts[this.size] = this.poolSize;
+        this.hashes[entry] = hash;
+        this.counts[entry] = num;
+        this.slots[slot] = entry;
+        return false;
+    }
+
+    /**
+     * @return true if no more key can be added
+     */
+    public boolean isFull() {
+        return this.size >= this.maxEntries || this.poolSize >= this.maxBytes;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public byte[] pool() {
+        return this.pool;
+    }
+
+    /**
+     * @param entry entry index in [0, size)
+     * @return start of the key in pool()
+     */
+    public int start(int entry) {
+        return this.starts[entry];
+    }
+
+    /**
+     * @param entry entry index in [0, size)
+     * @return length of the key
+     */
+    public int length(int entry) {
+        return this.starts[entry + 1] - this.starts[entry];
+    }
+
+    /**
+     * @param entry entry index in [0, size)
+     * @return count of the key
+     */
+    public int count(int entry) {
+        return this.counts[entry];
+    }
+
+    /**
+     * remove all keys
+     */
+    public void clear() {
+        Arrays.fill(this.slots, EMPTY);
+        this.size = 0;
+        this.poolSize = 0;
+    }
+
+    private boolean equalsAt(int entry, byte[] bytes, int off, int len) {
+        int start = this.starts[entry];
+        if (this.starts[entry + 1] - start != len) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (this.pool[start + i] != bytes[off + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
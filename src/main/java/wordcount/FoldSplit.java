@@ -0,0 +1,67 @@
+package wordcount;
+
+import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * combined split which also carries the cross validation fold of each
+ * document. the folds are assigned by the driver and attached when the
+ * splits are computed, so a task never loads the fold of other documents.
+ * the class key of a document in a fold is "class/fold", a directory name
+ * never contains '/'.
+ */
+public class FoldSplit extends CombineFileSplit {
+    public static final char SEPARATOR = '/';
+    private int[] folds;
+
+    public FoldSplit() {
+    }
+
+    /**
+     * @param split the combined split
+     * @param folds fold of each path of the split
+     * @throws IOException exception from the split
+     */
+    public FoldSplit(CombineFileSplit split, int[] folds) throws IOException {
+        super(split.getPaths(), split.getStartOffsets(), split.getLengths(),
+            split.getLocations());
+        this.folds = folds;
+    }
+
+    /**
+     * @param index index of a path in the split
+     * @return fold of the document
+     */
+    public int getFold(int index) {
+        return this.folds[index];
+    }
+
+    /**
+     * @param className class name
+     * @param fold      fold of a document
+     * @return class key of the documents of the class in the fold
+     */
+    public static String foldClass(String className, int fold) {
+        return className + SEPARATOR + fold;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        super.write(out);
+        for (int fold : this.folds) {
+            out.writeInt(fold);
+        }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        super.readFields(in);
+        this.folds = new int[getNumPaths()];
+        for (int i = 0; i < this.folds.length; i++) {
+            this.folds[i] = in.readInt();
+        }
+    }
+}
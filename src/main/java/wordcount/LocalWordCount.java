@@ -0,0 +1,164 @@
+package wordcount;
+
+import model.Vocabulary;
+import model.WordCounts;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * in-process replacement of the word count job for a dataset which is
+ * small enough to be read by one machine.
+ * the documents are tokenized by a fork-join pool, each worker thread
+ * counts into its own word counts and document counts, which are merged
+ * into the result at the end. the counts are the same as those of the job:
+ * every word of a document is counted for the class of its parent
+ * directory, words are hashed into buckets when the result is hashed, and
+ * every document adds one to its class.
+ */
+public class LocalWordCount {
+    // datasets of fewer bytes are counted in process, 0 always runs the job
+    public static final String THRESHOLD = "naivebayes.local.threshold.bytes";
+    public static final long DEFAULT_THRESHOLD = 2L * 1024 * 1024 * 1024;
+    // read buffer size of a document
+    private static final int READ_BUFFER = 64 * 1024;
+
+    private final Configuration conf;
+    private final int threads;
+    // counts of each worker thread
+    private final List<Partial> partials = new ArrayList<>();
+    private final ThreadLocal<Partial> partial;
+
+    /**
+     * @param conf       config of the file system
+     * @param threads    the number of worker threads
+     * @param vocabulary vocabulary of the result, the counts of a worker
+     *                   are hashed like it
+     */
+    public LocalWordCount(Configuration conf, int threads, Vocabulary vocabulary) {
+        this.conf = conf;
+        this.threads = Math.max(1, threads);
+        this.partial = ThreadLocal.withInitial(() -> {
+            Partial partial = new Partial(vocabulary.isHashed()
+                ? Vocabulary.hashed(vocabulary.size()) : new Vocabulary());
+            synchronized (this.partials) {
+                this.partials.add(partial);
+            }
+            return partial;
+        });
+    }
+
+    /**
+     * @param docs status of documents
+     * @return total bytes of the documents
+     */
+    public static long length(List<FileStatus> docs) {
+        long length = 0;
+        for (FileStatus doc : docs) {
+            length += doc.getLen();
+        }
+        return length;
+    }
+
+    /**
+     * count the documents and add the result to counts
+     *
+     * @param docs   documents to count
+     * @param counts word counts to add to
+     * @return the number of tokens and bytes read
+     * @throws IOException exception from the file system
+     */
+    public long[] count(List<FileStatus> docs, WordCounts counts) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(this.threads);
+        try {
+            pool.invoke(new CountAction(docs, 0, docs.size(),
+                Math.max(1, docs.size() / (this.threads * 8))));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdownNow();
+        }
+        long[] read = new long[2];
+        for (Partial partial : this.partials) {
+            counts.merge(partial.counts);
+            read[0] += partial.tokens;
+            read[1] += partial.bytes;
+        }
+        this.partials.clear();
+        return read;
+    }
+
+    /**
+     * count a range of documents, split in halves down to grain documents
+     */
+    private class CountAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<FileStatus> docs;
+        private final int from;
+        private final int to;
+        private final int grain;
+
+        CountAction(List<FileStatus> docs, int from, int to, int grain) {
+            this.docs = docs;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from > this.grain) {
+                int middle = (this.from + this.to) >>> 1;
+                invokeAll(new CountAction(this.docs, this.from, middle, this.grain),
+                    new CountAction(this.docs, middle, this.to, this.grain));
+                return;
+            }
+            Partial partial = LocalWordCount.this.partial.get();
+            try {
+                for (int i = this.from; i < this.to; i++) {
+                    partial.count(this.docs.get(i), LocalWordCount.this.conf);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * counts of one worker thread
+     */
+    private static class Partial {
+        final WordCounts counts;
+        final Vocabulary vocabulary;
+        final byte[] buffer = new byte[READ_BUFFER];
+        long tokens;
+        long bytes;
+
+        Partial(Vocabulary vocabulary) {
+            this.vocabulary = vocabulary;
+            this.counts = new WordCounts(vocabulary);
+        }
+
+        void count(FileStatus status, Configuration conf) throws IOException {
+            Path doc = status.getPath();
+            String className = WordCountMapper.className(doc);
+            int c = this.counts.addClass(className);
+            try (FSDataInputStream in = doc.getFileSystem(conf).open(doc)) {
+                ByteTokenizer.tokenize(in, this.buffer, (bytes, off, len) -> {
+                    this.counts.add(c, this.vocabulary.add(bytes, off, len), 1);
+                    this.tokens++;
+                });
+            }
+            this.bytes += status.getLen();
+        }
+    }
+}
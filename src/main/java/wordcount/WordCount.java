@@ -1,17 +1,16 @@
 package wordcount;
 
+import filecount.MyCombineFileInputFormat;
 import filecount.MyFileInputFormat;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.Text;
-import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
-import org.apache.hadoop.mapreduce.lib.input.FileSplit;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 
 import java.io.IOException;
@@ -30,7 +29,12 @@ public class WordCount {
         job.setReducerClass(IntSumReducer.class);
         job.setOutputKeyClass(Text.class);
         job.setOutputValueClass(IntWritable.class);
-        job.setInputFormatClass(MyFileInputFormat.class);
+        if (conf.getBoolean(MyCombineFileInputFormat.COMBINE_INPUT, true)) {
+            // pack many small documents into each map task
+            job.setInputFormatClass(MyCombineFileInputFormat.class);
+        } else {
+            job.setInputFormatClass(MyFileInputFormat.class);
+        }
         FileInputFormat.setInputPaths(job, new Path(args[0]));
         FileOutputFormat.setOutputPath(job, new Path(args[1]));
         System.exit(job.waitForCompletion(true) ? 0 : 1);
@@ -44,8 +48,6 @@ public class WordCount {
         public void map(Text key, IntWritable value, Context context
         ) throws IOException, InterruptedException {
             context.write(key, one);
-            InputSplit inputSplit = context.getInputSplit();
-            System.out.println(((FileSplit) inputSplit).toString());
         }
     }
 
@@ -1,22 +1,165 @@
 package wordcount;
 
+import model.Vocabulary;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
 
 import java.io.IOException;
-import java.util.StringTokenizer;
+import java.util.Map;
+
+/**
+ * word count mapper for all classes in a single job.
+ * the class of a document is the name of its parent directory, every word
+ * is emitted as a (class, word) ClassWordKey with the id of the class in
+ * the class list of the job. documents are not counted, the number of
+ * documents of a class is known from the listing of the dataset.
+ * with in-mapper combining the counts are aggregated in a bounded
+ * CountTable, which is flushed when it is full and in cleanup.
+ * when HASH_BUCKETS is set, a word is emitted as its bucket in the hashed
+ * vocabulary as word id, so the job output has a fixed maximum size.
+ */
+public class WordCountMapper extends Mapper<Object, Text, ClassWordKey, IntWritable> {
+    // aggregate counts inside the mapper before they are emitted
+    public static final String COMBINE = "naivebayes.mapper.combine";
+    // maximum number of keys held by the mapper before a flush
+    public static final String COMBINE_ENTRIES = "naivebayes.mapper.combine.entries";
+    // maximum bytes of keys held by the mapper before a flush
+    public static final String COMBINE_BYTES = "naivebayes.mapper.combine.bytes";
+    // the number of buckets of a hashed vocabulary, 0 keeps the words
+    public static final String HASH_BUCKETS = "naivebayes.hash.buckets";
+
+    public enum CombineCounter {
+        FLUSHES, HITS, MISSES
+    }
+
+    public enum WordCountCounter {
+        TOKENS, BYTES
+    }
 
-public class WordCountMapper extends Mapper<Object, Text, Text, IntWritable> {
     private final static IntWritable one = new IntWritable(1);
-    private Text word = new Text();
+    private ClassWordKey word = new ClassWordKey();
+    private IntWritable count = new IntWritable();
+    // null if in-mapper combining is off
+    private CountTable table;
+    private long hits;
+    private long misses;
+    private long tokens;
+    private long bytes;
+    private ByteTokenizer tokenizer = new ByteTokenizer();
+    // class name -> class id of the job
+    private Map<String, Integer> classIds;
+    // serialized class id, the prefix of every key of the current document
+    private byte[] classPrefix;
+    // class of the current document when the input is combined
+    private Text className = new Text();
+    // the number of buckets, 0 if words are emitted
+    private int buckets;
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        Configuration conf = context.getConfiguration();
+        this.buckets = conf.getInt(HASH_BUCKETS, 0);
+        this.classIds = ClassWordKey.classIds(ClassWordKey.getClasses(conf));
+        if (conf.getBoolean(COMBINE, true)) {
+            this.table = new CountTable(conf.getInt(COMBINE_ENTRIES, 1 << 18),
+                conf.getInt(COMBINE_BYTES, 16 * 1024 * 1024));
+        }
+        /*
+         *  a combined split holds many documents, the class of each line
+         *  is given by the key from CombinedTextInputFormat.
+         */
+        InputSplit split = context.getInputSplit();
+        if (!(split instanceof CombineFileSplit)) {
+            this.classPrefix = classPrefix(className(((FileSplit) split).getPath()));
+        }
+    }
 
     public void map(Object key, Text value, Context context
     ) throws IOException, InterruptedException {
-        StringTokenizer itr = new StringTokenizer(value.toString());
-        while (itr.hasMoreTokens()) {
-            word.set(itr.nextToken());
-            context.write(word, one);
+        if (key instanceof Text && !key.equals(this.className)) {
+            this.className.set((Text) key);
+            this.classPrefix = classPrefix(key.toString());
+        }
+        ByteTokenizer tokenizer = this.tokenizer.reset(value.getBytes(), 0,
+            value.getLength());
+        this.bytes += value.getLength();
+        while (tokenizer.next()) {
+            this.tokens++;
+            if (this.buckets > 0) {
+                this.word.setWordId(this.classPrefix, Vocabulary.bucket(tokenizer.bytes(),
+                    tokenizer.start(), tokenizer.length(), this.buckets));
+            } else {
+                this.word.set(this.classPrefix, tokenizer.bytes(),
+                    tokenizer.start(), tokenizer.length());
+            }
+            if (this.table == null) {
+                context.write(this.word, one);
+            } else {
+                if (this.table.add(this.word.getBytes(), 0, this.word.getLength(), 1)) {
+                    this.hits++;
+                } else {
+                    this.misses++;
+                }
+                if (this.table.isFull()) {
+                    flush(context);
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        context.getCounter(WordCountCounter.TOKENS).increment(this.tokens);
+        context.getCounter(WordCountCounter.BYTES).increment(this.bytes);
+        if (this.table != null) {
+            flush(context);
+            context.getCounter(CombineCounter.HITS).increment(this.hits);
+            context.getCounter(CombineCounter.MISSES).increment(this.misses);
+        }
+    }
+
+    /**
+     * emit all counts of the table and clear it
+     */
+    private void flush(Context context) throws IOException, InterruptedException {
+        if (this.table.size() == 0) {
+            return;
+        }
+        CountTable table = this.table;
+        for (int i = 0; i < table.size(); i++) {
+            this.word.set(table.pool(), table.start(i), table.length(i));
+            this.count.set(table.count(i));
+            context.write(this.word, this.count);
         }
+        table.clear();
+        context.getCounter(CombineCounter.FLUSHES).increment(1);
+    }
+
+    /**
+     * @param className class name or class key of a document
+     * @return prefix of the keys of the class
+     * @throws IOException if the class is not in the class list of the job
+     */
+    private byte[] classPrefix(String className) throws IOException {
+        Integer classId = this.classIds.get(className);
+        if (classId == null) {
+            throw new IOException("class " + className + " is not in "
+                + ClassWordKey.CLASSES);
+        }
+        return ClassWordKey.prefix(classId);
+    }
+
+    /**
+     * @param doc path of a document
+     * @return class of the document
+     */
+    public static String className(Path doc) {
+        return doc.getParent().getName();
     }
 }
@@ -1,15 +1,31 @@
 package wordcount;
 
 import org.apache.hadoop.io.IntWritable;
-import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.TaskType;
 
 import java.io.IOException;
 
-public class WordCountReducer extends Reducer<Text, IntWritable, Text, IntWritable> {
+public class WordCountReducer
+    extends Reducer<ClassWordKey, IntWritable, ClassWordKey, IntWritable> {
     private IntWritable result = new IntWritable();
+    // false when the reducer runs as the combiner of a map task
+    private boolean reduceTask;
+    // (class, word) keys and the sum of their counts
+    private long distinctWords;
+    private long words;
 
-    public void reduce(Text key, Iterable<IntWritable> values, Context context)
+    public enum ReduceCounter {
+        DISTINCT_WORDS, WORDS
+    }
+
+    @Override
+    protected void setup(Context context) {
+        this.reduceTask =
+            context.getTaskAttemptID().getTaskType() == TaskType.REDUCE;
+    }
+
+    public void reduce(ClassWordKey key, Iterable<IntWritable> values, Context context)
             throws IOException, InterruptedException {
         int sum = 0;
         for (IntWritable val : values) {
@@ -17,5 +33,17 @@ public class WordCountReducer extends Reducer<Text, IntWritable, Text, IntWritab
         }
         result.set(sum);
         context.write(key, result);
+        if (this.reduceTask) {
+            this.distinctWords++;
+            this.words += sum;
+        }
+    }
+
+    @Override
+    protected void cleanup(Context context) {
+        if (this.reduceTask) {
+            context.getCounter(ReduceCounter.DISTINCT_WORDS).increment(this.distinctWords);
+            context.getCounter(ReduceCounter.WORDS).increment(this.words);
+        }
     }
 }
@@ -0,0 +1,199 @@
+package corpus;
+
+import model.Vocabulary;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CorpusCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Configuration conf = new Configuration();
+    private File dataset;
+    // class/name -> content of each document
+    private final Map<String, byte[]> docs = new TreeMap<>();
+
+    @Before
+    public void writeDataset() throws IOException {
+        this.dataset = this.folder.newFolder("dataset");
+        writeDoc("sport", "a", text("goal ball goal\nreferee"));
+        writeDoc("sport", "b", text("ball  ball\tpitch"));
+        writeDoc("sport", "c", text(""));
+        // two words which are not utf-8 and decode to the same string
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(new byte[]{(byte) 0xff, ' ', (byte) 0xfe, ' ', (byte) 0xff, ' '});
+        bytes.write(text("chip café"));
+        writeDoc("tech", "d", bytes.toByteArray());
+        writeDoc("tech", "e", text("chip chip ball"));
+    }
+
+    private static byte[] text(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void writeDoc(String className, String name, byte[] content) throws IOException {
+        File dir = new File(this.dataset, className);
+        dir.mkdirs();
+        Files.write(new File(dir, name).toPath(), content);
+        this.docs.put(className + '/' + name, content);
+    }
+
+    private Path datasetPath() {
+        return new Path(this.dataset.getAbsolutePath());
+    }
+
+    private Path cacheDir() {
+        return new Path(new File(this.folder.getRoot(), "cache").getAbsolutePath());
+    }
+
+    private TreeMap<String, List<FileStatus>> listing() throws IOException {
+        FileSystem fs = FileSystem.getLocal(this.conf);
+        TreeMap<String, List<FileStatus>> listing = new TreeMap<>();
+        for (FileStatus dir : fs.listStatus(datasetPath())) {
+            List<FileStatus> classDocs = new ArrayList<>();
+            for (FileStatus doc : fs.listStatus(dir.getPath())) {
+                if (!doc.getPath().getName().startsWith(".")) {
+                    classDocs.add(doc);
+                }
+            }
+            classDocs.sort(Comparator.comparing(doc -> doc.getPath().getName()));
+            listing.put(dir.getPath().getName(), classDocs);
+        }
+        return listing;
+    }
+
+    // word id in vocabulary -> tf of the words of a document
+    private static Map<Integer, Integer> termFrequencies(byte[] content, Vocabulary vocabulary) {
+        Map<Integer, Integer> tfs = new HashMap<>();
+        int start = 0;
+        for (int i = 0; i <= content.length; i++) {
+            if (i == content.length || Character.isWhitespace(content[i])) {
+                if (i > start) {
+                    tfs.merge(vocabulary.add(content, start, i - start), 1, Integer::sum);
+                }
+                start = i + 1;
+            }
+        }
+        return tfs;
+    }
+
+    @Test
+    public void cacheHoldsTheTokenizedDocuments() throws Exception {
+        CorpusCache.build(this.conf, datasetPath(), listing(), cacheDir(), 2);
+        CorpusCache cache = CorpusCache.open(this.conf, cacheDir());
+        assertTrue(cache.isCacheOf(datasetPath()));
+        assertFalse(cache.isCacheOf(new Path(this.folder.getRoot().getAbsolutePath())));
+        assertArrayEquals(new String[]{"sport", "tech"}, cache.getClassNames());
+        assertEquals(this.docs.size(), cache.docNum());
+        assertEquals(2, cache.partNum());
+
+        Vocabulary vocabulary = new Vocabulary();
+        List<String> docNames = new ArrayList<>(this.docs.keySet());
+        List<Map<Integer, Integer>> expected = new ArrayList<>();
+        for (String doc : docNames) {
+            expected.add(termFrequencies(this.docs.get(doc), vocabulary));
+        }
+        int words = vocabulary.size();
+        int read = 0;
+        for (int p = 0; p < cache.partNum(); p++) {
+            try (CorpusReader reader = cache.openPart(p)) {
+                int[] remap = reader.remap(vocabulary, true);
+                while (reader.next()) {
+                    int d = reader.docId();
+                    assertEquals(docNames.get(d),
+                        cache.getClassNames()[cache.docClass(d)] + '/' + cache.docName(d));
+                    assertEquals(cache.docClass(d), reader.classId());
+                    Map<Integer, Integer> tfs = new HashMap<>();
+                    for (int i = 0; i < reader.size(); i++) {
+                        if (i > 0) {
+                            assertTrue(reader.id(i - 1) < reader.id(i));
+                        }
+                        tfs.put(remap[reader.id(i)], reader.tf(i));
+                    }
+                    assertEquals(docNames.get(d), expected.get(d), tfs);
+                    read++;
+                }
+            }
+        }
+        assertEquals(this.docs.size(), read);
+        // remap found every word of the parts instead of adding it again
+        assertEquals(words, vocabulary.size());
+        assertNotEquals(vocabulary.get(new byte[]{(byte) 0xff}, 0, 1),
+            vocabulary.get(new byte[]{(byte) 0xfe}, 0, 1));
+    }
+
+    @Test
+    public void changedDatasetIsNotCurrent() throws Exception {
+        CorpusCache cache = CorpusCache.build(this.conf, datasetPath(), listing(), cacheDir(), 1);
+        assertTrue(cache.isCurrent(listing()));
+        assertTrue(CorpusCache.open(this.conf, cacheDir()).isCurrent(listing()));
+
+        File doc = new File(this.dataset, "sport/a");
+        long modified = doc.lastModified();
+        assertTrue(doc.setLastModified(modified - 60000));
+        assertFalse(cache.isCurrent(listing()));
+        assertTrue(doc.setLastModified(modified));
+        assertTrue(cache.isCurrent(listing()));
+
+        writeDoc("tech", "f", text("new"));
+        assertFalse(cache.isCurrent(listing()));
+        assertTrue(new File(this.dataset, "tech/f").delete());
+        assertTrue(cache.isCurrent(listing()));
+
+        assertTrue(new File(this.dataset, "tech/e").delete());
+        assertFalse(cache.isCurrent(listing()));
+    }
+
+    @Test
+    public void rebuildsIncompleteCache() throws Exception {
+        File dir = new File(cacheDir().toString());
+        assertTrue(dir.mkdirs());
+        File part = new File(dir, "part-00007");
+        Files.write(part.toPath(), text("left over"));
+        assertFalse(CorpusCache.exists(this.conf, cacheDir()));
+        CorpusCache.build(this.conf, datasetPath(), listing(), cacheDir(), 1);
+        assertTrue(CorpusCache.exists(this.conf, cacheDir()));
+        assertFalse(part.exists());
+        assertEquals(1, CorpusCache.open(this.conf, cacheDir()).partNum());
+    }
+
+    @Test
+    public void keepsDirectoryWhichIsNotACache() throws Exception {
+        File dir = new File(cacheDir().toString());
+        assertTrue(dir.mkdirs());
+        File other = new File(dir, "important.txt");
+        Files.write(other.toPath(), text("keep"));
+        try {
+            CorpusCache.build(this.conf, datasetPath(), listing(), cacheDir(), 1);
+            fail("built a cache in a directory with other files");
+        } catch (IOException e) {
+            // expected
+        }
+        assertArrayEquals(text("keep"), Files.readAllBytes(other.toPath()));
+    }
+}
@@ -0,0 +1,140 @@
+package model;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ModelFileTest {
+    private static final String[] WORDS = {"ball", "goal", "match", "cpu", "chip",
+        "bread", "salt", "café", "naïve", "goal"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Configuration conf = new Configuration();
+
+    /**
+     * @return counts of three classes, each word counted for some of them
+     */
+    private static WordCounts counts() {
+        WordCounts counts = new WordCounts();
+        String[] classes = {"sport", "tech", "food"};
+        for (int c = 0; c < classes.length; c++) {
+            int index = counts.addClass(classes[c]);
+            for (int w = 0; w < WORDS.length; w++) {
+                if ((w + c) % 3 != 0) {
+                    counts.add(index, WORDS[w], w + c + 1);
+                }
+            }
+        }
+        return counts;
+    }
+
+    private static Map<String, Double> prior() {
+        Map<String, Integer> docNum = new HashMap<>();
+        docNum.put("sport", 5);
+        docNum.put("tech", 3);
+        docNum.put("food", 1);
+        Map<String, Double> prior = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : docNum.entrySet()) {
+            prior.put(entry.getKey(), Math.log(entry.getValue() / 9.0));
+        }
+        return prior;
+    }
+
+    private File write(WordCounts counts, ScoringModel model) throws IOException {
+        Map<String, ArrayList<String>> classes = new HashMap<>();
+        Map<String, ArrayList<String>> testFile = new HashMap<>();
+        for (String className : counts.getClassNames()) {
+            classes.put(className, new ArrayList<>(Arrays.asList(className + "1", className + "2")));
+            testFile.put(className, new ArrayList<>(Arrays.asList(className + "3")));
+        }
+        File file = this.folder.newFile();
+        ModelFile.write(new FileOutputStream(file), classes, testFile, 6, 4, counts, model);
+        return file;
+    }
+
+    private static double[] score(ScoringModel model, String... words) {
+        double[] scores = model.newScores();
+        for (String word : words) {
+            model.addWord(word, scores);
+        }
+        return scores;
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        WordCounts counts = counts();
+        ScoringModel model = ScoringModel.build(prior(), counts);
+        File file = write(counts, model);
+        for (boolean offHeap : new boolean[]{false, true}) {
+            try (ModelFile.Reader reader = ModelFile.open(this.conf, new Path(file.toURI()))) {
+                assertEquals(6, reader.getDocsTotalNum());
+                assertEquals(4, reader.getModelVersion());
+                Map<String, ArrayList<String>> classes = new HashMap<>();
+                Map<String, ArrayList<String>> testFile = new HashMap<>();
+                reader.readSplit(classes, testFile);
+                assertEquals(Arrays.asList("tech1", "tech2"), classes.get("tech"));
+                assertEquals(Arrays.asList("food3"), testFile.get("food"));
+                assertEquals(prior(), reader.readPrior());
+                WordCounts read = reader.readCounts(reader.readVocabulary());
+                for (String className : counts.getClassNames()) {
+                    for (String word : WORDS) {
+                        assertEquals(counts.count(counts.classIndex(className),
+                                counts.getVocabulary().get(word)),
+                            read.count(read.classIndex(className), read.getVocabulary().get(word)));
+                    }
+                }
+                ScoringModel loaded = reader.readScoringModel(offHeap);
+                assertArrayEquals(model.getClassNames(), loaded.getClassNames());
+                assertArrayEquals(score(model, "goal", "café", "unknown", "cpu"),
+                    score(loaded, "goal", "café", "unknown", "cpu"), 0);
+                assertEquals(-1, loaded.getVocabulary().get("unknown"));
+            }
+        }
+    }
+
+    @Test
+    public void rejectsTruncatedFile() throws IOException {
+        WordCounts counts = counts();
+        File file = write(counts, ScoringModel.build(prior(), counts));
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.setLength(raw.length() - 4);
+        }
+        try {
+            ModelFile.open(this.conf, new Path(file.toURI())).close();
+            fail("opened a truncated model file");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void rejectsOtherFile() throws IOException {
+        File file = this.folder.newFile();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[256]);
+        }
+        try {
+            ModelFile.open(this.conf, new Path(file.toURI())).close();
+            fail("opened a file which is not a model file");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package model;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ScoringModelTest {
+    private static final int CLASS_NUM = 50;
+    private static final int WORD_NUM = 2000;
+    private static final int K = 5;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * @return counts where every class uses all words a little and the
+     * words of its own topic a lot, so most classes can be pruned
+     */
+    private static WordCounts counts(Random random) {
+        WordCounts counts = new WordCounts();
+        for (int c = 0; c < CLASS_NUM; c++) {
+            int index = counts.addClass("class" + c);
+            for (int w = 0; w < WORD_NUM; w++) {
+                int num = random.nextInt(3);
+                if (w % CLASS_NUM == c) {
+                    num += 50 + random.nextInt(50);
+                }
+                if (num > 0) {
+                    counts.add(index, "w" + w, num);
+                }
+            }
+        }
+        return counts;
+    }
+
+    private static Map<String, Double> prior(WordCounts counts, Random random) {
+        Map<String, Double> prior = new HashMap<>();
+        for (String className : counts.getClassNames()) {
+            prior.put(className, Math.log((1 + random.nextInt(10)) / (5.5 * CLASS_NUM)));
+        }
+        return prior;
+    }
+
+    /**
+     * @return word ids of a document mostly about one topic, -1 for a word
+     * out of the vocabulary
+     */
+    private static int[] document(WordIndex vocabulary, Random random) {
+        int topic = random.nextInt(CLASS_NUM);
+        int[] words = new int[20 + random.nextInt(300)];
+        for (int i = 0; i < words.length; i++) {
+            int w = random.nextInt(4) == 0 ? random.nextInt(WORD_NUM)
+                : topic + CLASS_NUM * random.nextInt(WORD_NUM / CLASS_NUM);
+            words[i] = random.nextInt(20) == 0 ? -1 : vocabulary.get("w" + w);
+        }
+        return words;
+    }
+
+    // topK sorts the vector, so every call gets a vector of its own
+    private static TermVector vector(int[] words) {
+        TermVector vector = new TermVector();
+        for (int word : words) {
+            vector.add(word);
+        }
+        return vector;
+    }
+
+    private ScoringModel offHeap(WordCounts counts, ScoringModel model) throws IOException {
+        Map<String, ArrayList<String>> classes = new HashMap<>();
+        for (String className : counts.getClassNames()) {
+            classes.put(className, new ArrayList<>());
+        }
+        File file = this.folder.newFile();
+        ModelFile.write(new FileOutputStream(file), classes, classes, 0, 1, counts, model);
+        try (ModelFile.Reader reader = ModelFile.open(new Configuration(),
+            new Path(file.toURI()))) {
+            return reader.readScoringModel(true);
+        }
+    }
+
+    private static void checkTopK(ScoringModel model, long seed) {
+        Random random = new Random(seed);
+        for (int d = 0; d < 300; d++) {
+            int[] words = document(model.getVocabulary(), random);
+            double[] scores = model.newScores();
+            model.addVector(vector(words), scores);
+            double max = Arrays.stream(scores).max().getAsDouble();
+            double logEvidence = max + Math.log(Arrays.stream(scores)
+                .map(score -> Math.exp(score - max)).sum());
+            List<Integer> byScore = IntStream.range(0, CLASS_NUM).boxed()
+                .sorted(Comparator.comparingDouble(c -> -scores[c]))
+                .collect(Collectors.toList());
+            assertEquals(model.bestIndex(scores), (int) byScore.get(0));
+
+            TopClasses exact = model.topK(vector(words), K, false);
+            TopClasses pruned = model.topK(vector(words), K, true);
+            assertEquals(K, exact.size());
+            assertEquals(K, pruned.size());
+            for (int i = 0; i < K; i++) {
+                int c = byScore.get(i);
+                assertEquals(c, exact.classIndex(i));
+                assertEquals(model.getClassNames()[c], exact.className(i));
+                assertEquals(scores[c] - logEvidence, exact.logPosterior(i), 1e-9);
+                assertEquals("document " + d + " rank " + i, c, pruned.classIndex(i));
+                assertTrue(pruned.logPosterior(i) <= exact.logPosterior(i) + 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void prunedTopKMatchesExactTopK() {
+        Random random = new Random(42);
+        WordCounts counts = counts(random);
+        checkTopK(ScoringModel.build(prior(counts, random), counts), 7);
+    }
+
+    @Test
+    public void prunedTopKMatchesExactTopKOffHeap() throws IOException {
+        Random random = new Random(43);
+        WordCounts counts = counts(random);
+        ScoringModel model = ScoringModel.build(prior(counts, random), counts);
+        checkTopK(offHeap(counts, model), 8);
+    }
+
+    @Test
+    public void topKOfFewClasses() {
+        Random random = new Random(44);
+        WordCounts counts = counts(random);
+        ScoringModel model = ScoringModel.build(prior(counts, random), counts);
+        int[] words = document(model.getVocabulary(), random);
+        for (int k : new int[]{0, 1, CLASS_NUM, CLASS_NUM + 10}) {
+            TopClasses exact = model.topK(vector(words), k, false);
+            TopClasses pruned = model.topK(vector(words), k, true);
+            assertEquals(Math.min(k, CLASS_NUM), exact.size());
+            assertEquals(exact.size(), pruned.size());
+            for (int i = 0; i < exact.size(); i++) {
+                assertEquals(exact.classIndex(i), pruned.classIndex(i));
+                assertEquals(exact.logPosterior(i), pruned.logPosterior(i), 1e-9);
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package model;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class VocabularyTest {
+    /**
+     * @return two different words with the same 32 bit hash
+     */
+    static String[] collision() {
+        Map<Integer, String> seen = new HashMap<>();
+        for (int i = 0; ; i++) {
+            String word = "w" + i;
+            byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+            String other = seen.putIfAbsent(Vocabulary.hash(bytes, 0, bytes.length), word);
+            if (other != null) {
+                return new String[]{other, word};
+            }
+        }
+    }
+
+    @Test
+    public void collidingWordsKeepTheirIds() {
+        String[] words = collision();
+        Vocabulary vocabulary = new Vocabulary(4);
+        int first = vocabulary.add(words[0]);
+        int second = vocabulary.add(words[1]);
+        assertNotEquals(first, second);
+        assertEquals(first, vocabulary.get(words[0]));
+        assertEquals(second, vocabulary.get(words[1]));
+        assertEquals(words[1], vocabulary.word(second));
+    }
+
+    @Test
+    public void idsSurviveRehash() {
+        Vocabulary vocabulary = new Vocabulary(4);
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(i, vocabulary.add("word" + i));
+        }
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(i, vocabulary.get("word" + i));
+            assertEquals(i, vocabulary.add("word" + i));
+        }
+        assertEquals(10000, vocabulary.size());
+        assertEquals(-1, vocabulary.get("word10000"));
+    }
+
+    @Test
+    public void tableKeepsIdsOfWordsNotUtf8() {
+        Vocabulary vocabulary = new Vocabulary();
+        byte[] a = {(byte) 0xff, 'a'};
+        byte[] b = {(byte) 0xfe, 'a'};
+        int idA = vocabulary.add(a, 0, a.length);
+        int idB = vocabulary.add(b, 0, b.length);
+        assertNotEquals(idA, idB);
+        Vocabulary table = Vocabulary.fromTable(vocabulary.pool(), vocabulary.offsets(),
+            vocabulary.slots(), vocabulary.size());
+        assertEquals(idA, table.get(a, 0, a.length));
+        assertEquals(idB, table.get(b, 0, b.length));
+        assertTrue(table.add("new") >= 2);
+    }
+}
@@ -0,0 +1,87 @@
+package server;
+
+import model.ScoringModel;
+import model.WordCounts;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MicroBatcherTest {
+    private static ScoringModel model() {
+        WordCounts counts = new WordCounts();
+        int sport = counts.addClass("sport");
+        int tech = counts.addClass("tech");
+        counts.add(sport, "ball", 5);
+        counts.add(sport, "goal", 5);
+        counts.add(tech, "cpu", 5);
+        counts.add(tech, "chip", 5);
+        Map<String, Double> prior = new HashMap<>();
+        prior.put("sport", Math.log(0.5));
+        prior.put("tech", Math.log(0.5));
+        return ScoringModel.build(prior, counts);
+    }
+
+    private static CompletableFuture<String> submit(MicroBatcher batcher, String doc)
+        throws InterruptedException {
+        byte[] bytes = doc.getBytes(StandardCharsets.UTF_8);
+        return batcher.submit(bytes, 0, bytes.length);
+    }
+
+    private static void assertShutDown(CompletableFuture<String> result) throws Exception {
+        try {
+            result.get(10, TimeUnit.SECONDS);
+            fail("request was scored after shutdown");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void scoresSubmittedDocuments() throws Exception {
+        MicroBatcher batcher = new MicroBatcher(model(), 2, 4, 1, 64);
+        try {
+            List<CompletableFuture<String>> results = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                results.add(submit(batcher, i % 2 == 0 ? "ball goal ball" : "cpu chip"));
+            }
+            for (int i = 0; i < 10; i++) {
+                assertEquals(i % 2 == 0 ? "sport" : "tech",
+                    results.get(i).get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            batcher.shutdown();
+        }
+    }
+
+    @Test
+    public void shutdownFailsWaitingRequests() throws Exception {
+        // without scorers every request stays in the queue
+        MicroBatcher batcher = new MicroBatcher(model(), 0, 4, 1, 64);
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            results.add(submit(batcher, "ball"));
+        }
+        batcher.shutdown();
+        for (CompletableFuture<String> result : results) {
+            assertShutDown(result);
+        }
+    }
+
+    @Test
+    public void rejectsRequestsAfterShutdown() throws Exception {
+        MicroBatcher batcher = new MicroBatcher(model(), 1, 4, 1, 64);
+        batcher.shutdown();
+        assertShutDown(submit(batcher, "goal"));
+    }
+}
@@ -0,0 +1,108 @@
+package wordcount;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.WritableComparator;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ClassWordKeyTest {
+    private static final String[] WORDS = {"", "a", "ab", "b", "ball", "café", "goal",
+        "wörd", "zz"};
+
+    private static List<ClassWordKey> keys() {
+        List<ClassWordKey> keys = new ArrayList<>();
+        // class ids and word ids of one and several varint bytes
+        for (int classId : new int[]{0, 1, 127, 128, 300}) {
+            byte[] prefix = ClassWordKey.prefix(classId);
+            for (String word : WORDS) {
+                byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+                ClassWordKey key = new ClassWordKey();
+                key.set(prefix, bytes, 0, bytes.length);
+                keys.add(key);
+            }
+            char[] chars = new char[200];
+            Arrays.fill(chars, 'x');
+            byte[] longWord = new String(chars).getBytes(StandardCharsets.UTF_8);
+            ClassWordKey key = new ClassWordKey();
+            key.set(prefix, longWord, 0, longWord.length);
+            keys.add(key);
+            for (int wordId : new int[]{0, 1, 63, 64, 1 << 20}) {
+                key = new ClassWordKey();
+                key.setWordId(prefix, wordId);
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    @Test
+    public void keysKeepClassAndWord() {
+        ClassWordKey key = new ClassWordKey();
+        byte[] word = "café".getBytes(StandardCharsets.UTF_8);
+        key.set(ClassWordKey.prefix(300), word, 0, word.length);
+        assertEquals(300, key.getClassId());
+        assertFalse(key.hasWordId());
+        assertEquals("café", key.getWord());
+        assertEquals("300\tcafé", key.toString());
+        key.setWordId(ClassWordKey.prefix(2), 1 << 20);
+        assertEquals(2, key.getClassId());
+        assertTrue(key.hasWordId());
+        assertEquals(1 << 20, key.getWordId());
+    }
+
+    @Test
+    public void rawComparatorAgreesWithCompareTo() throws IOException {
+        RawComparator<ClassWordKey> comparator = WritableComparator.get(ClassWordKey.class);
+        assertTrue(comparator instanceof ClassWordKey.Comparator);
+        List<ClassWordKey> keys = keys();
+        // serialized one after another, as in a spill, so keys start at an offset
+        DataOutputBuffer out = new DataOutputBuffer();
+        int[] start = new int[keys.size()];
+        for (int i = 0; i < keys.size(); i++) {
+            start[i] = out.getLength();
+            keys.get(i).write(out);
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            for (int j = 0; j < keys.size(); j++) {
+                int expected = Integer.signum(keys.get(i).compareTo(keys.get(j)));
+                int raw = comparator.compare(out.getData(), start[i],
+                    keys.get(i).getLength(), out.getData(), start[j], keys.get(j).getLength());
+                assertEquals(keys.get(i) + " vs " + keys.get(j), expected, Integer.signum(raw));
+                assertEquals(i == j, expected == 0);
+                assertEquals(expected, Integer.signum(comparator.compare(keys.get(i),
+                    keys.get(j))));
+            }
+        }
+    }
+
+    @Test
+    public void readFieldsGivesAnEqualKey() throws IOException {
+        List<ClassWordKey> keys = keys();
+        DataOutputBuffer out = new DataOutputBuffer();
+        for (ClassWordKey key : keys) {
+            key.write(out);
+        }
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset(out.getData(), out.getLength());
+        // one key read into again and again, as the reducer does
+        ClassWordKey read = new ClassWordKey();
+        for (ClassWordKey key : keys) {
+            read.readFields(in);
+            assertEquals(key, read);
+            assertEquals(key.hashCode(), read.hashCode());
+            assertEquals(key.toString(), read.toString());
+        }
+        assertEquals(-1, in.read());
+    }
+}
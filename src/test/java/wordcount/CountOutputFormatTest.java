@@ -0,0 +1,109 @@
+package wordcount;
+
+import model.JobOutput;
+import model.Vocabulary;
+import model.WordCounts;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class CountOutputFormatTest {
+    private static final String[] CLASSES = {"sport", "tech", "café"};
+
+    private static String word(int w) {
+        // one word longer than the read buffer of the count file reader
+        if (w == 7) {
+            char[] chars = new char[100000];
+            Arrays.fill(chars, 'x');
+            return new String(chars);
+        }
+        return w % 5 == 0 ? "wörd" + w : "word" + w;
+    }
+
+    private static int count(int c, int w) {
+        return (w * 131 + c * 17) % 100000 + 1;
+    }
+
+    private static void writeRecord(ByteArrayOutputStream out, ClassWordKey key, int count)
+        throws IOException {
+        out.write(key.getBytes(), 0, key.getLength());
+        CountOutputFormat.writeVarint(out, count);
+    }
+
+    private static byte[] countFile() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CountOutputFormat.writeHeader(out, CLASSES);
+        ClassWordKey key = new ClassWordKey();
+        for (int c = 0; c < CLASSES.length; c++) {
+            byte[] prefix = ClassWordKey.prefix(c);
+            for (int w = 0; w < 200; w++) {
+                byte[] word = word(w).getBytes(StandardCharsets.UTF_8);
+                key.set(prefix, word, 0, word.length);
+                writeRecord(out, key, count(c, w));
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void countFileMatchesTextOutput() throws IOException {
+        WordCounts binary = new WordCounts();
+        JobOutput.readCountFile(new ByteArrayInputStream(countFile()), binary);
+        StringBuilder text = new StringBuilder();
+        for (int c = 0; c < CLASSES.length; c++) {
+            for (int w = 0; w < 200; w++) {
+                text.append(c).append('\t').append(word(w)).append('\t')
+                    .append(count(c, w)).append('\n');
+            }
+        }
+        WordCounts parsed = new WordCounts();
+        JobOutput.read(new ByteArrayInputStream(text.toString().getBytes(StandardCharsets.UTF_8)),
+            CLASSES, parsed);
+        assertEquals(Arrays.asList(CLASSES), Arrays.asList(binary.getClassNames()));
+        assertEquals(200, binary.getVocabulary().size());
+        for (int c = 0; c < CLASSES.length; c++) {
+            for (int w = 0; w < 200; w++) {
+                int id = binary.getVocabulary().get(word(w));
+                assertEquals(count(c, w), binary.count(binary.classIndex(CLASSES[c]), id));
+                assertEquals(count(c, w), parsed.count(parsed.classIndex(CLASSES[c]),
+                    parsed.getVocabulary().get(word(w))));
+            }
+        }
+    }
+
+    @Test
+    public void countFileOfWordIds() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CountOutputFormat.writeHeader(out, CLASSES);
+        ClassWordKey key = new ClassWordKey();
+        for (int bucket = 0; bucket < 1024; bucket += 3) {
+            key.setWordId(ClassWordKey.prefix(bucket % CLASSES.length), bucket);
+            writeRecord(out, key, bucket + 1);
+        }
+        WordCounts counts = new WordCounts(Vocabulary.hashed(1024));
+        JobOutput.readCountFile(new ByteArrayInputStream(out.toByteArray()), counts);
+        for (int bucket = 0; bucket < 1024; bucket += 3) {
+            int c = counts.classIndex(CLASSES[bucket % CLASSES.length]);
+            assertEquals(bucket + 1, counts.count(c, bucket));
+        }
+    }
+
+    @Test
+    public void rejectsTruncatedCountFile() throws IOException {
+        byte[] file = countFile();
+        try {
+            JobOutput.readCountFile(new ByteArrayInputStream(
+                Arrays.copyOf(file, file.length - 1)), new WordCounts());
+            fail("read a truncated count file");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package wordcount;
+
+import model.Vocabulary;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CountTableTest {
+    private static byte[] bytes(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, Integer> entries(CountTable table) {
+        Map<String, Integer> entries = new HashMap<>();
+        for (int i = 0; i < table.size(); i++) {
+            entries.put(new String(table.pool(), table.start(i), table.length(i),
+                StandardCharsets.UTF_8), table.count(i));
+        }
+        return entries;
+    }
+
+    @Test
+    public void collidingKeysAreCountedApart() {
+        Map<Integer, String> seen = new HashMap<>();
+        String first = null;
+        String second = null;
+        for (int i = 0; first == null; i++) {
+            String key = "k" + i;
+            byte[] bytes = bytes(key);
+            first = seen.putIfAbsent(Vocabulary.hash(bytes, 0, bytes.length), key);
+            second = key;
+        }
+        CountTable table = new CountTable(16, 1024);
+        assertFalse(table.add(bytes(first), 0, bytes(first).length, 2));
+        assertFalse(table.add(bytes(second), 0, bytes(second).length, 3));
+        assertTrue(table.add(bytes(first), 0, bytes(first).length, 1));
+        Map<String, Integer> entries = entries(table);
+        assertEquals(2, entries.size());
+        assertEquals(3, (int) entries.get(first));
+        assertEquals(3, (int) entries.get(second));
+    }
+
+    @Test
+    public void countsMatchAMapUntilFull() {
+        CountTable table = new CountTable(1000, 1 << 20);
+        Map<String, Integer> expected = new HashMap<>();
+        for (int i = 0; !table.isFull(); i++) {
+            String key = "key" + (i * 7919 % 1000);
+            table.add(bytes(key), 0, bytes(key).length, 1);
+            expected.merge(key, 1, Integer::sum);
+        }
+        assertEquals(1000, table.size());
+        assertEquals(expected, entries(table));
+        table.clear();
+        assertEquals(0, table.size());
+        assertFalse(table.isFull());
+    }
+}